@@ -0,0 +1,43 @@
+package be.sanderl.chip8emu.bench;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per Dxyn instruction for several sprite heights and every mode, at 64x32. Every 62 sprites cost one extra
+ * jump and two additions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DrawBenchmark {
+
+    private static final int INSTRUCTIONS = 1024;
+
+    @Param({"1", "5", "8", "15"})
+    public int height;
+
+    @Param({"CHIP8", "SUPER_CHIP", "XO_CHIP"})
+    public Chip8Mode mode;
+
+    private Chip8Emulator emulator;
+
+    @Setup
+    public void setUp() {
+        emulator = new Chip8Emulator(mode);
+        emulator.init();
+        emulator.loadProgram(Programs.draw(height));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void draw() {
+        emulator.runFrame(INSTRUCTIONS);
+    }
+}
@@ -0,0 +1,57 @@
+package be.sanderl.chip8emu.bench;
+
+import be.sanderl.chip8emu.ExecutionEngine;
+import be.sanderl.chip8emu.headless.HeadlessRunner;
+import be.sanderl.chip8emu.headless.HeadlessSession;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames per second of many headless sessions running at once on every core.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeadlessBenchmark {
+
+    private static final int SESSIONS = 256;
+    private static final int FRAMES = 60;
+
+    @Param({"INTERPRETER", "PREDECODED", "RECOMPILER"})
+    public ExecutionEngine engine;
+
+    @Param({"alu", "draw"})
+    public String program;
+
+    private HeadlessRunner runner;
+    private byte[] programBytes;
+
+    @Setup
+    public void setUp() {
+        runner = new HeadlessRunner();
+        programBytes = Programs.load(program);
+    }
+
+    @TearDown
+    public void tearDown() {
+        runner.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SESSIONS * FRAMES)
+    public long frames() {
+        List<HeadlessSession> sessions = new ArrayList<>(SESSIONS);
+        for (int ii = 0; ii < SESSIONS; ii++) {
+            HeadlessSession session = new HeadlessSession("benchmark#" + ii, programBytes);
+            session.getEmulator().setEngine(engine);
+            sessions.add(session);
+        }
+        return runner.run(sessions, FRAMES).getInstructions();
+    }
+}
@@ -0,0 +1,56 @@
+package be.sanderl.chip8emu.bench;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.ExecutionEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per executed instruction, for every engine, mode and a mix of workloads. The workloads only use CHIP-8
+ * instructions, so the other modes show what their extensions cost programs that don't use them.
+ * Real programs can be benchmarked by passing their path, e.g. {@code -p program=/roms/breakout.ch8}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterpreterBenchmark {
+
+    private static final int INSTRUCTIONS = 1000;
+
+    @Param({"INTERPRETER", "PREDECODED", "RECOMPILER"})
+    public ExecutionEngine engine;
+
+    @Param({"CHIP8", "SUPER_CHIP", "XO_CHIP"})
+    public Chip8Mode mode;
+
+    @Param({"alu", "jump", "draw"})
+    public String program;
+
+    private Chip8Emulator emulator;
+
+    @Setup
+    public void setUp() {
+        emulator = new Chip8Emulator(mode);
+        emulator.init();
+        emulator.loadProgram(Programs.load(program));
+        emulator.setEngine(engine);
+        // Idle loops of real programs would otherwise count as executed without costing anything.
+        emulator.setIdleLoopDetection(false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void runFrame() {
+        emulator.runFrame(INSTRUCTIONS);
+    }
+
+    @Benchmark
+    public void runCycle() {
+        emulator.runCycle();
+    }
+}
@@ -0,0 +1,113 @@
+package be.sanderl.chip8emu.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Synthetic programs stressing a single kind of instruction, plus loading of real programs from disk.
+ * Every synthetic program is an endless loop, so it can be run for any amount of instructions.
+ */
+final class Programs {
+
+    private static final int PROGRAM_START = 0x200;
+    private static final int LOOP_LENGTH = 64;
+
+    private Programs() {
+    }
+
+    /**
+     * @param name one of "alu", "jump" or "draw", or else the path to a program file
+     */
+    static byte[] load(String name) {
+        switch (name) {
+            case "alu":
+                return alu();
+            case "jump":
+                return jump();
+            case "draw":
+                return draw(5);
+            default:
+                try {
+                    return Files.readAllBytes(Paths.get(name));
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+        }
+    }
+
+    /**
+     * Loads, adds, subtracts, shifts and logic operations on all registers.
+     */
+    static byte[] alu() {
+        int[] operations = new int[] {0x7013, 0x8014, 0x8125, 0x8236, 0x8341, 0x8452, 0x8563, 0x867E, 0x6A55, 0x8A07};
+        int[] program = new int[LOOP_LENGTH];
+        for (int ii = 0; ii < LOOP_LENGTH - 1; ii++) {
+            // Rotate the registers involved, so the operations don't all depend on the same ones.
+            int operation = operations[ii % operations.length];
+            program[ii] = operation + ((ii / operations.length) % 4 << 8);
+        }
+        program[LOOP_LENGTH - 1] = 0x1000 | PROGRAM_START;
+        return toBytes(program);
+    }
+
+    /**
+     * Jumps to the next instruction, alternated with calls to a subroutine that returns immediately.
+     */
+    static byte[] jump() {
+        int[] program = new int[LOOP_LENGTH];
+        int subroutine = PROGRAM_START + (LOOP_LENGTH - 1) * 2;
+        for (int ii = 0; ii < LOOP_LENGTH - 2; ii++) {
+            int next = PROGRAM_START + (ii + 1) * 2;
+            program[ii] = ii % 2 == 0 ? 0x1000 | next : 0x2000 | subroutine;
+        }
+        program[LOOP_LENGTH - 2] = 0x1000 | PROGRAM_START;
+        program[LOOP_LENGTH - 1] = 0x00EE;
+        return toBytes(program);
+    }
+
+    /**
+     * Draws sprites of the given height from the font, moving them across the screen.
+     */
+    static byte[] draw(int height) {
+        int[] program = new int[LOOP_LENGTH];
+        program[0] = 0xA000; // I = font
+        program[1] = 0x7003; // V0 += 3
+        program[2] = 0x7105; // V1 += 5
+        for (int ii = 3; ii < LOOP_LENGTH - 1; ii++) {
+            program[ii] = 0xD010 | height;
+        }
+        program[LOOP_LENGTH - 1] = 0x1000 | PROGRAM_START;
+        return toBytes(program);
+    }
+
+    /**
+     * Switches to 128x64 once, then keeps scrolling down, right and left, alternated with drawing a large digit or,
+     * for XO-CHIP, scrolling up.
+     */
+    static byte[] scroll(boolean scrollUp) {
+        int[] program = new int[LOOP_LENGTH];
+        program[0] = 0x00FF; // high resolution
+        program[1] = 0xF030; // I = large digit of V0
+        for (int ii = 2; ii < LOOP_LENGTH - 1; ii++) {
+            switch (ii % 4) {
+                case 0: program[ii] = 0x00C1; break;
+                case 1: program[ii] = 0x00FB; break;
+                case 2: program[ii] = 0x00FC; break;
+                default: program[ii] = scrollUp ? 0x00D1 : 0xD01A; break;
+            }
+        }
+        program[LOOP_LENGTH - 1] = 0x1000 | (PROGRAM_START + 2);
+        return toBytes(program);
+    }
+
+    private static byte[] toBytes(int[] instructions) {
+        byte[] bytes = new byte[instructions.length * 2];
+        for (int ii = 0; ii < instructions.length; ii++) {
+            bytes[ii * 2] = (byte) (instructions[ii] >> 8);
+            bytes[ii * 2 + 1] = (byte) instructions[ii];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,73 @@
+package be.sanderl.chip8emu.bench;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.renderer.AWTRenderer;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishing and painting the display into an offscreen image, either alternating between a drawn and an empty
+ * display, which changes every row holding a sprite, or with nothing changed at all.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RendererBenchmark {
+
+    @Param({"1", "10"})
+    public int zoomFactor;
+
+    private Chip8Emulator emulator;
+    private AWTRenderer renderer;
+    private BufferedImage image;
+    private Graphics2D graphics;
+    private ByteBuffer drawnState;
+    private ByteBuffer emptyState;
+    private boolean drawn;
+
+    @Setup
+    public void setUp() {
+        emulator = new Chip8Emulator();
+        emulator.init();
+        emulator.loadProgram(Programs.draw(15));
+        emptyState = ByteBuffer.allocate(Chip8Emulator.STATE_SIZE);
+        emulator.saveState(emptyState);
+        emulator.runFrame(10_000);
+
+        // Loading a state marks every row as changed, but only rows which actually differ get painted.
+        drawnState = ByteBuffer.allocate(Chip8Emulator.STATE_SIZE);
+        emulator.saveState(drawnState);
+
+        renderer = new AWTRenderer(emulator, zoomFactor);
+        renderer.setSize(renderer.getPreferredSize());
+        image = new BufferedImage(renderer.getWidth(), renderer.getHeight(), BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public void paintChangedFrame() {
+        drawn = !drawn;
+        ByteBuffer state = drawn ? drawnState : emptyState;
+        state.clear();
+        emulator.loadState(state);
+        renderer.publishFrame();
+        renderer.paint(graphics);
+    }
+
+    @Benchmark
+    public void paintNothingChanged() {
+        renderer.paint(graphics);
+    }
+}
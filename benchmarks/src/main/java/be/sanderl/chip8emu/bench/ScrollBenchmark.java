@@ -0,0 +1,40 @@
+package be.sanderl.chip8emu.bench;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per instruction of a 128x64 program which does little else than scrolling, for the modes supporting it.
+ * A quarter of the instructions draw a large digit, or scroll up on XO-CHIP.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScrollBenchmark {
+
+    private static final int INSTRUCTIONS = 1024;
+
+    @Param({"SUPER_CHIP", "XO_CHIP"})
+    public Chip8Mode mode;
+
+    private Chip8Emulator emulator;
+
+    @Setup
+    public void setUp() {
+        emulator = new Chip8Emulator(mode);
+        emulator.init();
+        emulator.loadProgram(Programs.scroll(mode == Chip8Mode.XO_CHIP));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void scroll() {
+        emulator.runFrame(INSTRUCTIONS);
+    }
+}
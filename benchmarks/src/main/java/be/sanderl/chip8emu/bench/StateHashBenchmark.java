@@ -0,0 +1,75 @@
+package be.sanderl.chip8emu.bench;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.state.TranspositionTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to hash the machine state with and without incremental hashing, and to look a state up in a transposition
+ * table, for every mode. Also the cost incremental hashing adds to drawing, which writes the display the most.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateHashBenchmark {
+
+    private static final int INSTRUCTIONS = 1024;
+
+    @Param({"CHIP8", "SUPER_CHIP", "XO_CHIP"})
+    public Chip8Mode mode;
+
+    private Chip8Emulator incremental;
+    private Chip8Emulator fromScratch;
+    private TranspositionTable table;
+
+    @Setup
+    public void setUp() {
+        incremental = create(true);
+        fromScratch = create(false);
+        table = new TranspositionTable(1 << 20);
+    }
+
+    private Chip8Emulator create(boolean stateHashing) {
+        Chip8Emulator emulator = new Chip8Emulator(mode);
+        emulator.init();
+        emulator.loadProgram(Programs.draw(5));
+        emulator.setStateHashing(stateHashing);
+        emulator.runFrame(INSTRUCTIONS);
+        return emulator;
+    }
+
+    @Benchmark
+    public long incrementalHash() {
+        return incremental.getStateHash();
+    }
+
+    @Benchmark
+    public long hashFromScratch() {
+        return fromScratch.getStateHash();
+    }
+
+    @Benchmark
+    public boolean hashAndDeduplicate() {
+        // Draws one sprite after the other, so that every state is a new one.
+        incremental.runCycle();
+        return table.add(incremental.getStateHash());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void drawWithHashing() {
+        incremental.runFrame(INSTRUCTIONS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void drawWithoutHashing() {
+        fromScratch.runFrame(INSTRUCTIONS);
+    }
+}
@@ -0,0 +1,47 @@
+package be.sanderl.chip8emu.bench;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.state.StatePool;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load a pooled instance into a worker, run a single frame and write it back, cycling through all instances
+ * so that every slot comes from main memory rather than the CPU caches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StatePoolBenchmark {
+
+    private static final int INSTANCES = 100_000;
+
+    @Param({"10", "100"})
+    public int instructionsPerFrame;
+
+    private StatePool pool;
+    private Chip8Emulator worker;
+    private int[] slots;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        worker = new Chip8Emulator();
+        worker.init();
+        worker.loadProgram(Programs.alu());
+
+        pool = new StatePool(INSTANCES);
+        slots = new int[INSTANCES];
+        pool.allocate(worker, slots);
+    }
+
+    @Benchmark
+    public void runSlot() {
+        pool.run(slots[next], worker, 1, instructionsPerFrame);
+        next = next + 1 < slots.length ? next + 1 : 0;
+    }
+}
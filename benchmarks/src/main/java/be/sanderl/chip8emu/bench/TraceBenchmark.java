@@ -0,0 +1,62 @@
+package be.sanderl.chip8emu.bench;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.trace.TraceRecorder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per executed instruction with and without tracing, writing the trace to a temporary file. On a machine with
+ * a single core, the writer thread competes with the emulator for it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TraceBenchmark {
+
+    private static final int INSTRUCTIONS = 1000;
+
+    @Param({"alu", "jump", "draw"})
+    public String program;
+
+    @Param({"false", "true"})
+    public boolean tracing;
+
+    private Chip8Emulator emulator;
+    private Path file;
+    private TraceRecorder recorder;
+
+    @Setup
+    public void setUp() throws IOException {
+        emulator = new Chip8Emulator();
+        emulator.init();
+        emulator.loadProgram(Programs.load(program));
+        emulator.setIdleLoopDetection(false);
+        if (tracing) {
+            file = Files.createTempFile("chip8", ".c8tr");
+            recorder = new TraceRecorder(file, emulator.getMode(), 1 << 20);
+            emulator.setTracer(recorder);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (recorder != null) {
+            recorder.close();
+            Files.delete(file);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void runFrame() {
+        emulator.runFrame(INSTRUCTIONS);
+    }
+}
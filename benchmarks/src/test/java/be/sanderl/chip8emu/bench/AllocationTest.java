@@ -0,0 +1,141 @@
+package be.sanderl.chip8emu.bench;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.ExecutionEngine;
+import be.sanderl.chip8emu.FrameScheduler;
+import be.sanderl.chip8emu.Keypad;
+import be.sanderl.chip8emu.Sound;
+import be.sanderl.chip8emu.renderer.AWTRenderer;
+import be.sanderl.chip8emu.sound.AudioSink;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the run loop allocates nothing once warmed up: frames, key events, sound and frame publication, for
+ * every mode and engine. Programs are run headless and the allocated bytes of the running thread are compared before
+ * and after.
+ */
+class AllocationTest {
+
+    private static final int WARMUP_FRAMES = 20_000;
+    private static final int MEASURED_FRAMES = 5_000;
+    private static final int INSTRUCTIONS_PER_SECOND = 60_000;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @BeforeAll
+    static void headless() {
+        // The renderer only publishes frames here, there is no window to paint them in.
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    @Test
+    void syntheticProgramsDontAllocate() {
+        List<String> failures = new ArrayList<>();
+        for (String name : new String[] {"alu", "jump", "draw"}) {
+            for (Chip8Mode mode : Chip8Mode.values()) {
+                check(name, Programs.load(name), mode, failures);
+            }
+        }
+        check("scroll", Programs.scroll(false), Chip8Mode.SUPER_CHIP, failures);
+        check("scroll", Programs.scroll(true), Chip8Mode.XO_CHIP, failures);
+        assertTrue(failures.isEmpty(), String.join("\n", failures));
+    }
+
+    @Test
+    void soundDoesntAllocate() {
+        List<String> failures = new ArrayList<>();
+        check("sound", sound(), Chip8Mode.CHIP8, failures);
+        assertTrue(failures.isEmpty(), String.join("\n", failures));
+    }
+
+    @Test
+    void unknownInstructionsDontAllocate() {
+        List<String> failures = new ArrayList<>();
+        check("unknown", unknownInstructions(), Chip8Mode.CHIP8, failures);
+        assertTrue(failures.isEmpty(), String.join("\n", failures));
+    }
+
+    /**
+     * Runs the program with every engine, adding a line to the failures for each one that allocated.
+     */
+    private void check(String name, byte[] program, Chip8Mode mode, List<String> failures) {
+        for (ExecutionEngine engine : ExecutionEngine.values()) {
+            long allocated = measure(program, mode, engine);
+            if (allocated > 0) {
+                failures.add(String.format("%s %s %s: %d bytes in %d frames", name, mode, engine, allocated,
+                        MEASURED_FRAMES));
+            }
+        }
+    }
+
+    /**
+     * @return the bytes the calling thread allocated while running the measured frames
+     */
+    private long measure(byte[] program, Chip8Mode mode, ExecutionEngine engine) {
+        Chip8Emulator emulator = new Chip8Emulator(mode);
+        emulator.init();
+        emulator.loadProgram(program);
+        emulator.setEngine(engine);
+
+        Keypad keypad = new Keypad();
+        FrameScheduler scheduler = new FrameScheduler(emulator, INSTRUCTIONS_PER_SECOND);
+        scheduler.setKeypad(keypad);
+        scheduler.setPaced(false);
+        Sound sound = new Sound(emulator, new DiscardingSink());
+        AWTRenderer renderer = new AWTRenderer(emulator);
+
+        run(keypad, scheduler, sound, renderer, WARMUP_FRAMES);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        run(keypad, scheduler, sound, renderer, MEASURED_FRAMES);
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    private static void run(Keypad keypad, FrameScheduler scheduler, Sound sound, AWTRenderer renderer, int frames) {
+        for (int ii = 0; ii < frames; ii++) {
+            // A key changes every frame, so a program waiting for one never parks the check.
+            int key = ii / 2 & 0xF;
+            if (ii % 2 == 0) {
+                keypad.press(key);
+            } else {
+                keypad.release(key);
+            }
+            scheduler.runFrame();
+            sound.renderFrame();
+            renderer.publishFrame();
+        }
+    }
+
+    /**
+     * Keeps restarting the sound timer, so the tone never stops.
+     */
+    private static byte[] sound() {
+        return new byte[] {0x60, 0x1E, (byte) 0xF0, 0x18, 0x71, 0x01, 0x12, 0x02};
+    }
+
+    /**
+     * Adds to a register, then hits an instruction no mode knows, over and over.
+     */
+    private static byte[] unknownInstructions() {
+        return new byte[] {0x70, 0x01, (byte) 0xE0, 0x00, (byte) 0xF1, (byte) 0xFF, 0x12, 0x00};
+    }
+
+    private static final class DiscardingSink implements AudioSink {
+
+        @Override
+        public void write(byte[] samples, int length) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package be.sanderl.chip8emu;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class Chip8EmulatorTest {
+
+    // Magic, version and mode come before memory in a save state.
+    private static final int STATE_MEMORY_OFFSET = 4 + 2 + 1;
+
+    @Test
+    void registerTransfersWrapAroundTheEndOfMemory() {
+        byte[] program = {
+                (byte) 0xF0, 0x00, (byte) 0xFF, (byte) 0xFE, // I = FFFE
+                0x60, 0x11, 0x61, 0x22, 0x62, 0x33,          // V0 = 11, V1 = 22, V2 = 33
+                (byte) 0xF2, 0x55,                           // store V0 - V2 at FFFE, FFFF and 0000
+                0x60, 0x00, 0x61, 0x00, 0x62, 0x00,
+                (byte) 0xF2, 0x65,                           // and read them back
+        };
+        for (ExecutionEngine engine : ExecutionEngine.values()) {
+            Chip8Emulator emulator = run(Chip8Mode.XO_CHIP, engine, program, 9);
+            assertEquals(0xFFFE, emulator.getI());
+            assertEquals(0x11, emulator.getRegister(0));
+            assertEquals(0x22, emulator.getRegister(1));
+            assertEquals(0x33, emulator.getRegister(2));
+            assertEquals(0x33, memory(emulator, 0));
+        }
+    }
+
+    @Test
+    void bcdWrapsAroundTheEndOfMemory() {
+        byte[] program = {
+                (byte) 0xF0, 0x00, (byte) 0xFF, (byte) 0xFE, // I = FFFE
+                0x63, (byte) 0xEA,                           // V3 = 234
+                (byte) 0xF3, 0x33,                           // BCD of V3 at FFFE, FFFF and 0000
+                (byte) 0xF2, 0x65,
+        };
+        for (ExecutionEngine engine : ExecutionEngine.values()) {
+            Chip8Emulator emulator = run(Chip8Mode.XO_CHIP, engine, program, 4);
+            assertEquals(2, emulator.getRegister(0));
+            assertEquals(3, emulator.getRegister(1));
+            assertEquals(4, emulator.getRegister(2));
+        }
+    }
+
+    @Test
+    void rangeTransfersWrapAroundTheEndOfMemory() {
+        byte[] program = {
+                (byte) 0xF0, 0x00, (byte) 0xFF, (byte) 0xFF, // I = FFFF
+                0x60, 0x11, 0x61, 0x22, 0x62, 0x33,
+                0x52, 0x02,                                  // save V2 - V0 at FFFF, 0000 and 0001
+                0x60, 0x00, 0x61, 0x00, 0x62, 0x00,
+                0x50, 0x23,                                  // and load them back in the other order
+        };
+        for (ExecutionEngine engine : ExecutionEngine.values()) {
+            Chip8Emulator emulator = run(Chip8Mode.XO_CHIP, engine, program, 9);
+            assertEquals(0x33, emulator.getRegister(0));
+            assertEquals(0x22, emulator.getRegister(1));
+            assertEquals(0x11, emulator.getRegister(2));
+            assertEquals(0x11, memory(emulator, 1));
+        }
+    }
+
+    @Test
+    void registerTransfersWrapAroundInChip8Mode() {
+        byte[] program = {
+                (byte) 0xAF, (byte) 0xFE,                    // I = FFE
+                0x60, 0x11, 0x61, 0x22, 0x62, 0x33,
+                (byte) 0xF2, 0x55,                           // store V0 - V2 at FFE, FFF and 000
+        };
+        Chip8Emulator emulator = run(Chip8Mode.CHIP8, ExecutionEngine.INTERPRETER, program, 5);
+        assertEquals(0x11, memory(emulator, 0xFFE));
+        assertEquals(0x22, memory(emulator, 0xFFF));
+        assertEquals(0x33, memory(emulator, 0));
+    }
+
+    @Test
+    void overwrittenInstructionRunsInItsNewForm() {
+        byte[] program = {
+                0x60, 0x62, 0x61, 0x2A,                      // 200: V0 = 62, V1 = 2A
+                0x22, 0x10,                                  // 204: call 210, which sets V2 = 01
+                (byte) 0x83, 0x20,                           // 206: V3 = V2
+                (byte) 0xA2, 0x10,                           // 208: I = 210
+                (byte) 0xF1, 0x55,                           // 20A: overwrite 210 with 62 2A
+                0x22, 0x10,                                  // 20C: call 210 again, which now sets V2 = 2A
+                0x12, 0x0E,                                  // 20E: loop forever
+                0x62, 0x01,                                  // 210: V2 = 01
+                0x00, (byte) 0xEE,                           // 212: return
+        };
+        for (ExecutionEngine engine : ExecutionEngine.values()) {
+            Chip8Emulator emulator = run(Chip8Mode.CHIP8, engine, program, 11);
+            assertEquals(0x01, emulator.getRegister(3), engine.name());
+            assertEquals(0x2A, emulator.getRegister(2), engine.name());
+        }
+    }
+
+    @Test
+    void engineCanBeChosenBeforeInit() {
+        for (ExecutionEngine engine : ExecutionEngine.values()) {
+            Chip8Emulator emulator = new Chip8Emulator();
+            emulator.setEngine(engine);
+            emulator.init();
+            emulator.loadProgram(new byte[] {0x60, 0x01, 0x70, 0x01, 0x12, 0x02}); // V0 = 1, then V0 += 1 forever
+            emulator.runFrame(10);
+            assertEquals(6, emulator.getRegister(0));
+        }
+    }
+
+    private static Chip8Emulator run(Chip8Mode mode, ExecutionEngine engine, byte[] program, int instructions) {
+        Chip8Emulator emulator = new Chip8Emulator(mode);
+        emulator.init();
+        emulator.setEngine(engine);
+        emulator.loadProgram(program);
+        for (int ii = 0; ii < instructions; ii++) {
+            emulator.runCycle();
+        }
+        return emulator;
+    }
+
+    private static int memory(Chip8Emulator emulator, int address) {
+        ByteBuffer state = ByteBuffer.allocate(emulator.getStateSize());
+        emulator.saveState(state);
+        return state.get(STATE_MEMORY_OFFSET + address) & 0xFF;
+    }
+}
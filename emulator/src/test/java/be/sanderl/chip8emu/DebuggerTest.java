@@ -0,0 +1,119 @@
+package be.sanderl.chip8emu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DebuggerTest {
+
+    private static final byte[] XO_PROGRAM = {
+            (byte) 0xF0, 0x00, 0x03, 0x00, // 200: I = 0300
+            0x60, 0x11, 0x61, 0x22,        // 204: V0 = 11, V1 = 22
+            0x50, 0x12,                    // 208: save V0 - V1 at 0300 and 0301
+            (byte) 0xF0, 0x02,             // 20A: load the audio pattern from 0300 - 030F
+            (byte) 0xF3, 0x01,             // 20C: select both planes
+            (byte) 0xA3, 0x10,             // 20E: I = 0310
+            (byte) 0xD0, 0x05,             // 210: draw 5 rows per plane, from 0310 - 0319
+            0x12, 0x12,                    // 212: loop forever
+    };
+
+    @Test
+    void watchesLongIndexLoad() {
+        Chip8Emulator emulator = emulator();
+        Debugger debugger = new Debugger(emulator);
+        debugger.watchIndex(Debugger.WRITE);
+        emulator.runFrame(10);
+
+        assertTrue(debugger.isPaused());
+        assertEquals(0x200, emulator.getPc());
+        assertEquals("Write of I by F000 0300 at 200", debugger.getLastBreak());
+    }
+
+    @Test
+    void watchesRangeSave() {
+        assertBreaksAt(0x301, Debugger.WRITE, 0x208);
+    }
+
+    @Test
+    void watchesAudioPatternLoad() {
+        assertBreaksAt(0x30F, Debugger.READ, 0x20A);
+    }
+
+    @Test
+    void watchesSpriteOfEverySelectedPlane() {
+        // The second plane's sprite follows the first one's.
+        assertBreaksAt(0x319, Debugger.READ, 0x210);
+    }
+
+    @Test
+    void ignoresMemoryPastTheSprites() {
+        Chip8Emulator emulator = emulator();
+        Debugger debugger = new Debugger(emulator);
+        debugger.addWatchpoint(0x31A, 0x330, Debugger.READ | Debugger.WRITE);
+        emulator.runFrame(10);
+
+        assertFalse(debugger.isPaused());
+    }
+
+    @Test
+    void continuesPastBreakpointOnce() {
+        Chip8Emulator emulator = loop();
+        Debugger debugger = new Debugger(emulator);
+        debugger.addBreakpoint(0x202);
+        emulator.runFrame(10);
+        debugger.resume();
+        emulator.runFrame(10);
+
+        assertTrue(debugger.isPaused());
+        assertEquals(0x202, emulator.getPc());
+        assertEquals(2, debugger.getBreakCount());
+    }
+
+    @Test
+    void breaksAgainAfterSteppingBackToBreakpoint() {
+        Chip8Emulator emulator = loop();
+        Debugger debugger = new Debugger(emulator);
+        debugger.addBreakpoint(0x202);
+        emulator.runFrame(10);
+        for (int ii = 0; ii < 2; ii++) {
+            debugger.step();
+            assertTrue(debugger.awaitStep());
+            emulator.runCycle();
+        }
+        assertEquals(0x202, emulator.getPc());
+
+        // The breakpoint has to trigger before the very first instruction.
+        debugger.resume();
+        emulator.runFrame(1);
+        assertTrue(debugger.isPaused());
+        assertEquals(0x202, emulator.getPc());
+        assertEquals(2, debugger.getBreakCount());
+    }
+
+    private static void assertBreaksAt(int address, int access, int pc) {
+        Chip8Emulator emulator = emulator();
+        Debugger debugger = new Debugger(emulator);
+        debugger.addWatchpoint(address, address + 1, access);
+        emulator.runFrame(10);
+
+        assertTrue(debugger.isPaused());
+        assertEquals(pc, emulator.getPc());
+    }
+
+    // 200: V0 = 1, 202: jump back to 200
+    private static Chip8Emulator loop() {
+        Chip8Emulator emulator = new Chip8Emulator();
+        emulator.init();
+        emulator.loadProgram(new byte[] {0x60, 0x01, 0x12, 0x00});
+        return emulator;
+    }
+
+    private static Chip8Emulator emulator() {
+        Chip8Emulator emulator = new Chip8Emulator(Chip8Mode.XO_CHIP);
+        emulator.init();
+        emulator.loadProgram(XO_PROGRAM);
+        return emulator;
+    }
+}
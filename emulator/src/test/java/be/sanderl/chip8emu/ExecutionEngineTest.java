@@ -0,0 +1,111 @@
+package be.sanderl.chip8emu;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ExecutionEngineTest {
+
+    private static final int FRAMES = 120;
+    private static final int INSTRUCTIONS_PER_FRAME = 100;
+
+    // Random sprites of digits, BCD conversions, timers and a conditional clear
+    private static final byte[] MIXED = {
+            (byte) 0xC0, 0x3F,             // 200: V0 = random & 3F
+            (byte) 0xC1, 0x1F,             // 202: V1 = random & 1F
+            (byte) 0xF2, 0x29,             // 204: I = digit of V2
+            (byte) 0xD0, 0x15,             // 206: draw it at V0, V1
+            0x72, 0x01,                    // 208: V2 += 1
+            (byte) 0xA3, 0x00,             // 20A: I = 300
+            (byte) 0xF2, 0x33,             // 20C: BCD of V2 at 300 - 302
+            (byte) 0xF1, 0x65,             // 20E: V0 - V1 = 300 - 301
+            0x30, 0x00,                    // 210: skip the clear unless V2 >= 100
+            0x00, (byte) 0xE0,             // 212: clear
+            (byte) 0xF3, 0x15,             // 214: DT = V3
+            0x73, 0x07,                    // 216: V3 += 7
+            0x12, 0x00,                    // 218: loop
+    };
+
+    // Rewrites an instruction further down the very block doing the writing
+    private static final byte[] MODIFIES_OWN_BLOCK = {
+            (byte) 0xA2, 0x09,             // 200: I = 209
+            (byte) 0x80, 0x20,             // 202: V0 = V2
+            (byte) 0xF0, 0x55,             // 204: store V0 at 209
+            0x72, 0x01,                    // 206: V2 += 1
+            0x73, 0x00,                    // 208: V3 += whatever was stored
+            0x12, 0x00,                    // 20A: loop
+    };
+
+    // Alternates a subroutine which already ran between adding to V4 and adding to V5
+    private static final byte[] MODIFIES_SUBROUTINE = {
+            0x22, 0x14,                    // 200: call 214
+            0x76, 0x01,                    // 202: V6 += 1
+            (byte) 0x80, 0x60,             // 204: V0 = V6
+            0x61, 0x01,                    // 206: V1 = 1
+            (byte) 0x80, 0x12,             // 208: V0 &= V1
+            0x70, 0x74,                    // 20A: V0 += 74
+            (byte) 0xA2, 0x14,             // 20C: I = 214
+            (byte) 0xF1, 0x55,             // 20E: store 74 01 or 75 01 at 214
+            0x12, 0x00,                    // 210: loop
+            0x00, 0x00,
+            0x74, 0x01,                    // 214: V4 += 1, or V5 += 1
+            0x00, (byte) 0xEE,             // 216: return
+    };
+
+    // High resolution, then scrolls in every direction alternated with drawing a large digit
+    private static final byte[] SCROLL = {
+            0x00, (byte) 0xFF,             // 200: high resolution
+            (byte) 0xF0, 0x30,             // 202: I = large digit of V0
+            0x00, (byte) 0xC1,             // 204: scroll down
+            0x00, (byte) 0xFB,             // 206: scroll right
+            (byte) 0xD0, 0x1A,             // 208: draw it
+            0x00, (byte) 0xFC,             // 20A: scroll left
+            0x70, 0x01,                    // 20C: V0 += 1
+            0x12, 0x02,                    // 20E: loop
+    };
+
+    @Test
+    void enginesAgreeAfterEveryFrame() {
+        for (Chip8Mode mode : Chip8Mode.values()) {
+            assertEnginesAgree(mode, MIXED);
+            assertEnginesAgree(mode, MODIFIES_OWN_BLOCK);
+            assertEnginesAgree(mode, MODIFIES_SUBROUTINE);
+        }
+        assertEnginesAgree(Chip8Mode.SUPER_CHIP, SCROLL);
+        assertEnginesAgree(Chip8Mode.XO_CHIP, SCROLL);
+    }
+
+    private static void assertEnginesAgree(Chip8Mode mode, byte[] program) {
+        ExecutionEngine[] engines = ExecutionEngine.values();
+        Chip8Emulator[] emulators = new Chip8Emulator[engines.length];
+        for (int ii = 0; ii < engines.length; ii++) {
+            emulators[ii] = new Chip8Emulator(mode);
+            emulators[ii].setEngine(engines[ii]);
+            emulators[ii].init();
+            emulators[ii].setSeed(42);
+            emulators[ii].loadProgram(program);
+        }
+
+        for (int frame = 0; frame < FRAMES; frame++) {
+            byte[] expected = null;
+            for (int ii = 0; ii < engines.length; ii++) {
+                emulators[ii].runFrame(INSTRUCTIONS_PER_FRAME);
+                byte[] state = state(emulators[ii]);
+                if (expected == null) {
+                    expected = state;
+                } else {
+                    assertArrayEquals(expected, state, String.format("%s with %s differs from %s after frame %d",
+                            mode, engines[ii], engines[0], frame));
+                }
+            }
+        }
+    }
+
+    private static byte[] state(Chip8Emulator emulator) {
+        ByteBuffer buffer = ByteBuffer.allocate(emulator.getStateSize());
+        emulator.saveState(buffer);
+        return buffer.array();
+    }
+}
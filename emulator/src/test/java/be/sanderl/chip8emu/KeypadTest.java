@@ -0,0 +1,98 @@
+package be.sanderl.chip8emu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeypadTest {
+
+    @Test
+    void appliesEventsInOrderOneTransitionPerKeyAFrame() {
+        Keypad keypad = new Keypad();
+        Chip8Emulator emulator = emulator(new byte[] {0x12, 0x00});
+        keypad.press(1);
+        keypad.press(2);
+        keypad.release(1);
+        keypad.press(3);
+
+        // The release of 1 has to wait for the next frame, and so does everything queued after it.
+        keypad.applyTo(emulator);
+        assertEquals(0b0110, emulator.getKeys());
+        assertTrue(keypad.hasPendingEvents());
+
+        keypad.applyTo(emulator);
+        assertEquals(0b1100, emulator.getKeys());
+        assertFalse(keypad.hasPendingEvents());
+    }
+
+    @Test
+    void keepsTheMaskOfPressedKeys() {
+        Keypad keypad = new Keypad();
+        keypad.press(0);
+        keypad.press(0xF);
+        keypad.press(7);
+        keypad.release(7);
+        assertEquals(0x8001, keypad.getPressedKeys());
+
+        // Auto-repeat presses of a held key don't queue anything.
+        Chip8Emulator emulator = emulator(new byte[] {0x12, 0x00});
+        keypad.applyTo(emulator);
+        keypad.applyTo(emulator);
+        keypad.press(0);
+        keypad.press(0);
+        assertFalse(keypad.hasPendingEvents());
+        assertEquals(0x8001, emulator.getKeys());
+    }
+
+    @Test
+    void resynchronizesFromTheMaskAfterOverflowing() {
+        Keypad keypad = new Keypad();
+        Chip8Emulator emulator = emulator(new byte[] {0x12, 0x00});
+        keypad.press(4);
+        // Far more transitions than fit in the queue, ending with the key released
+        for (int ii = 0; ii < 100; ii++) {
+            keypad.press(9);
+            keypad.release(9);
+        }
+        keypad.press(5);
+
+        keypad.applyTo(emulator);
+        assertEquals(0b110000, emulator.getKeys());
+        assertFalse(keypad.hasPendingEvents());
+
+        // Afterwards the queue works as before.
+        keypad.release(4);
+        keypad.applyTo(emulator);
+        assertEquals(0b100000, emulator.getKeys());
+    }
+
+    @Test
+    void waitForKeyResumesOnRelease() {
+        Keypad keypad = new Keypad();
+        // 200: V3 = key, 202: loop forever
+        Chip8Emulator emulator = emulator(new byte[] {(byte) 0xF3, 0x0A, 0x12, 0x02});
+        emulator.runFrame(10);
+        assertTrue(emulator.isWaitingForKey());
+
+        keypad.press(7);
+        keypad.applyTo(emulator);
+        emulator.runFrame(10);
+        assertTrue(emulator.isWaitingForKey());
+        assertEquals(0, emulator.getRegister(3));
+
+        keypad.release(7);
+        keypad.applyTo(emulator);
+        emulator.runFrame(10);
+        assertFalse(emulator.isWaitingForKey());
+        assertEquals(7, emulator.getRegister(3));
+    }
+
+    private static Chip8Emulator emulator(byte[] program) {
+        Chip8Emulator emulator = new Chip8Emulator();
+        emulator.init();
+        emulator.loadProgram(program);
+        return emulator;
+    }
+}
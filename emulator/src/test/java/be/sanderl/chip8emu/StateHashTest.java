@@ -0,0 +1,120 @@
+package be.sanderl.chip8emu;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class StateHashTest {
+
+    private static final int CYCLES = 400;
+
+    // Random digits on screen, their BCD in memory and every register stored after it
+    private static final byte[] DRAW_AND_STORE = {
+            (byte) 0xC0, 0x3F,             // 200: V0 = random & 3F
+            (byte) 0xC1, 0x1F,             // 202: V1 = random & 1F
+            (byte) 0xF2, 0x29,             // 204: I = digit of V2
+            (byte) 0xD0, 0x15,             // 206: draw it at V0, V1
+            0x72, 0x01,                    // 208: V2 += 1
+            (byte) 0xA3, 0x00,             // 20A: I = 300
+            (byte) 0xF2, 0x33,             // 20C: BCD of V2 at 300 - 302
+            (byte) 0xFF, 0x55,             // 20E: store V0 - VF from 300 on
+            0x00, (byte) 0xE0,             // 210: clear now and then
+            0x12, 0x00,                    // 212: loop
+    };
+
+    // High resolution, then scrolls in every direction alternated with drawing a large digit
+    private static final byte[] SCROLL = {
+            0x00, (byte) 0xFF,             // 200: high resolution
+            (byte) 0xF0, 0x30,             // 202: I = large digit of V0
+            0x00, (byte) 0xC1,             // 204: scroll down
+            0x00, (byte) 0xFB,             // 206: scroll right
+            (byte) 0xD0, 0x1A,             // 208: draw it
+            0x00, (byte) 0xFC,             // 20A: scroll left
+            0x70, 0x01,                    // 20C: V0 += 1
+            0x12, 0x02,                    // 20E: loop
+    };
+
+    // Both planes, a 16x16 sprite, scrolling up and saving a range of registers
+    private static final byte[] XO_PLANES = {
+            (byte) 0xF3, 0x01,             // 200: select both planes
+            0x00, (byte) 0xFF,             // 202: high resolution
+            (byte) 0xC0, 0x7F,             // 204: V0 = random & 7F
+            (byte) 0xC1, 0x3F,             // 206: V1 = random & 3F
+            (byte) 0xA0, 0x00,             // 208: I = 000
+            (byte) 0xD0, 0x10,             // 20A: draw 16x16 at V0, V1 on both planes
+            0x00, (byte) 0xD3,             // 20C: scroll up 3
+            (byte) 0xF0, 0x00, 0x30, 0x00, // 20E: I = 3000
+            0x50, 0x32,                    // 212: save V0 - V3
+            0x12, 0x04,                    // 214: loop
+    };
+
+    @Test
+    void incrementalHashEqualsFullRehash() {
+        for (Chip8Mode mode : Chip8Mode.values()) {
+            assertIncrementalHashHolds(mode, DRAW_AND_STORE);
+            if (mode != Chip8Mode.CHIP8) {
+                assertIncrementalHashHolds(mode, SCROLL);
+            }
+        }
+        assertIncrementalHashHolds(Chip8Mode.XO_CHIP, XO_PLANES);
+    }
+
+    @Test
+    void incrementalHashFollowsLoadState() {
+        for (Chip8Mode mode : Chip8Mode.values()) {
+            Chip8Emulator hashing = emulator(mode, DRAW_AND_STORE, true);
+            Chip8Emulator rehashing = emulator(mode, DRAW_AND_STORE, false);
+            ByteBuffer state = ByteBuffer.allocate(hashing.getStateSize());
+            hashing.runFrame(100);
+            hashing.saveState(state);
+            long saved = hashing.getStateHash();
+            hashing.runFrame(100);
+            assertNotEquals(saved, hashing.getStateHash(), mode.name());
+
+            state.flip();
+            hashing.loadState(state);
+            state.flip();
+            rehashing.loadState(state);
+            assertEquals(saved, hashing.getStateHash(), mode.name());
+            assertEquals(rehashing.getStateHash(), hashing.getStateHash(), mode.name());
+        }
+    }
+
+    @Test
+    void incrementalHashFollowsLoadProgram() {
+        Chip8Emulator hashing = emulator(Chip8Mode.CHIP8, DRAW_AND_STORE, true);
+        Chip8Emulator rehashing = emulator(Chip8Mode.CHIP8, DRAW_AND_STORE, false);
+        hashing.runFrame(100);
+        rehashing.runFrame(100);
+        hashing.loadProgram(SCROLL);
+        rehashing.loadProgram(SCROLL);
+        assertEquals(rehashing.getStateHash(), hashing.getStateHash());
+    }
+
+    /**
+     * Runs the program twice side by side, once keeping the hash up to date on every write and once hashing
+     * everything from scratch, comparing both hashes after every instruction.
+     */
+    private static void assertIncrementalHashHolds(Chip8Mode mode, byte[] program) {
+        Chip8Emulator hashing = emulator(mode, program, true);
+        Chip8Emulator rehashing = emulator(mode, program, false);
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            hashing.runCycle();
+            rehashing.runCycle();
+            assertEquals(rehashing.getStateHash(), hashing.getStateHash(),
+                    String.format("%s after instruction %d at %03x", mode, cycle, rehashing.getPc()));
+        }
+    }
+
+    private static Chip8Emulator emulator(Chip8Mode mode, byte[] program, boolean stateHashing) {
+        Chip8Emulator emulator = new Chip8Emulator(mode);
+        emulator.setStateHashing(stateHashing);
+        emulator.init();
+        emulator.setSeed(11);
+        emulator.loadProgram(program);
+        return emulator;
+    }
+}
@@ -0,0 +1,74 @@
+package be.sanderl.chip8emu.capture;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FrameCaptureTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void capturesSuperChipFrameAtHighResolution() throws IOException {
+        // HIGH, V0 = V1 = 0, I = the font's 0, draw it, then loop forever.
+        byte[] program = {0x00, (byte) 0xFF, 0x60, 0x00, 0x61, 0x00, (byte) 0xA0, 0x00, (byte) 0xD0, 0x15, 0x12, 0x0A};
+        Chip8Emulator emulator = new Chip8Emulator(Chip8Mode.SUPER_CHIP);
+        emulator.init();
+        emulator.loadProgram(program);
+        emulator.runFrame(10);
+
+        CaptureEncoder encoder = new CaptureEncoder(1);
+        FrameCapture capture = encoder.pngSequence(directory, "frame", Chip8Mode.SUPER_CHIP, 2);
+        capture.capture(emulator);
+        capture.close();
+        encoder.shutdown();
+
+        BufferedImage image = ImageIO.read(directory.resolve("frame000000.png").toFile());
+        assertEquals(256, image.getWidth());
+        assertEquals(128, image.getHeight());
+
+        // The 0 starts with rows F0 and 90, each pixel 2x2 at this zoom.
+        assertEquals(WHITE, image.getRGB(0, 0));
+        assertEquals(WHITE, image.getRGB(7, 1));
+        assertEquals(BLACK, image.getRGB(8, 0));
+        assertEquals(WHITE, image.getRGB(0, 2));
+        assertEquals(BLACK, image.getRGB(2, 2));
+        assertEquals(WHITE, image.getRGB(6, 3));
+        assertEquals(BLACK, image.getRGB(200, 100));
+    }
+
+    @Test
+    void capturesLowResolutionFrameScaledUp() throws IOException {
+        // V0 = V1 = 0, I = the font's 0, draw it at 64x32, then loop forever.
+        byte[] program = {0x60, 0x00, 0x61, 0x00, (byte) 0xA0, 0x00, (byte) 0xD0, 0x15, 0x12, 0x08};
+        Chip8Emulator emulator = new Chip8Emulator(Chip8Mode.XO_CHIP);
+        emulator.init();
+        emulator.loadProgram(program);
+        emulator.runFrame(10);
+
+        CaptureEncoder encoder = new CaptureEncoder(1);
+        FrameCapture capture = encoder.pngSequence(directory, "frame", Chip8Mode.XO_CHIP, 1);
+        capture.capture(emulator);
+        capture.close();
+        encoder.shutdown();
+
+        BufferedImage image = ImageIO.read(directory.resolve("frame000000.png").toFile());
+        assertEquals(128, image.getWidth());
+        assertEquals(64, image.getHeight());
+        assertEquals(WHITE, image.getRGB(7, 1));
+        assertEquals(BLACK, image.getRGB(8, 0));
+        assertEquals(BLACK, image.getRGB(2, 2));
+    }
+}
@@ -0,0 +1,30 @@
+package be.sanderl.chip8emu.headless;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HeadlessSessionTest {
+
+    // 200: V0 = 1, 202: jump to itself
+    private static final byte[] IDLE = {0x60, 0x01, 0x12, 0x02};
+
+    @Test
+    void skippedIdleLoopsAreNotCountedAsExecuted() {
+        HeadlessSession session = new HeadlessSession("idle", IDLE);
+        session.run(5, 10, StopCondition.NEVER);
+
+        // The first frame runs both instructions, every later one only the jump before the rest gets skipped.
+        assertEquals(6, session.getInstructionsExecuted());
+        assertEquals(50, session.getEmulator().getInstructionCount());
+    }
+
+    @Test
+    void loopsAreCountedWithoutIdleLoopDetection() {
+        HeadlessSession session = new HeadlessSession("idle", IDLE);
+        session.getEmulator().setIdleLoopDetection(false);
+        session.run(5, 10, StopCondition.NEVER);
+
+        assertEquals(50, session.getInstructionsExecuted());
+    }
+}
@@ -0,0 +1,127 @@
+package be.sanderl.chip8emu.movie;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.ExecutionEngine;
+import be.sanderl.chip8emu.FrameScheduler;
+import be.sanderl.chip8emu.Keypad;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InputMovieTest {
+
+    private static final long SEED = 1234;
+    private static final int INSTRUCTIONS_PER_SECOND = 600;
+    private static final int FRAMES = 120;
+
+    // Moves a digit right while key 5 is held and down unless key 8 is held, next to another one at a random spot.
+    private static final byte[] PROGRAM = {
+            (byte) 0xA0, 0x00,             // 200: I = digit 0
+            (byte) 0xD0, 0x15,             // 202: draw it at V0, V1
+            0x62, 0x05,                    // 204: V2 = 5
+            (byte) 0xE2, (byte) 0xA1,      // 206: skip unless key 5 is held
+            0x70, 0x01,                    // 208: V0 += 1
+            0x62, 0x08,                    // 20A: V2 = 8
+            (byte) 0xE2, (byte) 0x9E,      // 20C: skip if key 8 is held
+            0x71, 0x01,                    // 20E: V1 += 1
+            (byte) 0xC3, 0x1F,             // 210: V3 = random & 1F
+            (byte) 0xD3, 0x35,             // 212: draw at V3, V3
+            (byte) 0xD0, 0x15,             // 214: draw the first digit again
+            0x12, 0x00,                    // 216: loop
+    };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysWhatWasRecordedWithEveryEngine() throws IOException {
+        for (Chip8Mode mode : Chip8Mode.values()) {
+            InputMovie movie = new InputMovie(mode, SEED, INSTRUCTIONS_PER_SECOND, PROGRAM);
+            long[] expected = record(movie);
+            Path path = directory.resolve(mode + ".c8mv");
+            movie.write(path);
+
+            InputMovie read = InputMovie.read(path);
+            assertEquals(mode, read.getMode());
+            assertEquals(FRAMES, read.getFrameCount());
+            assertEquals(movie.getEventCount(), read.getEventCount());
+            for (ExecutionEngine engine : ExecutionEngine.values()) {
+                long[] hashes = new MovieReplayer().setEngine(engine).replay(PROGRAM, read);
+                assertArrayEquals(expected, hashes, mode + " " + engine);
+            }
+        }
+    }
+
+    @Test
+    void readsVersionOneMovies() throws IOException {
+        InputMovie movie = new InputMovie(Chip8Mode.CHIP8, SEED, INSTRUCTIONS_PER_SECOND, PROGRAM);
+        long[] expected = record(movie);
+
+        // Version 1 had no mode, everything was recorded in CHIP-8 mode.
+        Path path = directory.resolve("v1.c8mv");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+            out.writeInt(0x43384D56);
+            out.writeShort(1);
+            out.writeLong(SEED);
+            out.writeInt(INSTRUCTIONS_PER_SECOND);
+            CRC32 crc = new CRC32();
+            crc.update(PROGRAM);
+            out.writeInt((int) crc.getValue());
+            out.writeInt(movie.getFrameCount());
+            out.writeInt(movie.getEventCount());
+            for (int ii = 0; ii < movie.getEventCount(); ii++) {
+                out.writeInt(movie.getFrame(ii));
+                out.writeByte(movie.getKey(ii) | (movie.isPressed(ii) ? 0x10 : 0));
+            }
+        }
+
+        InputMovie read = InputMovie.read(path);
+        assertEquals(Chip8Mode.CHIP8, read.getMode());
+        assertEquals(SEED, read.getSeed());
+        assertEquals(INSTRUCTIONS_PER_SECOND, read.getInstructionsPerSecond());
+        assertEquals(movie.getFrameCount(), read.getFrameCount());
+        assertArrayEquals(expected, new MovieReplayer().replay(PROGRAM, read));
+    }
+
+    /**
+     * Plays the program like a live session would, holding keys 5 and 8 now and then.
+     *
+     * @return the display hash after every frame
+     */
+    private static long[] record(InputMovie movie) {
+        Chip8Emulator emulator = new Chip8Emulator(movie.getMode());
+        emulator.init();
+        emulator.setSeed(movie.getSeed());
+        emulator.loadProgram(PROGRAM);
+
+        Keypad keypad = new Keypad();
+        MovieRecorder recorder = new MovieRecorder(movie, emulator);
+        keypad.setRecorder(recorder);
+        FrameScheduler scheduler = new FrameScheduler(emulator, movie.getInstructionsPerSecond());
+        scheduler.setKeypad(keypad);
+        scheduler.setPaced(false);
+
+        long[] hashes = new long[FRAMES];
+        for (int frame = 0; frame < FRAMES; frame++) {
+            if (frame % 7 == 0) {
+                keypad.press(frame % 2 == 0 ? 5 : 8);
+            } else if (frame % 7 == 3) {
+                keypad.release(5);
+                keypad.release(8);
+            }
+            scheduler.runFrame();
+            hashes[frame] = MovieReplayer.hash(emulator);
+        }
+        recorder.finish();
+        return hashes;
+    }
+}
@@ -0,0 +1,88 @@
+package be.sanderl.chip8emu.rom;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RomPackTest {
+
+    // Magic, version and mode come before memory in a save state.
+    private static final int STATE_MEMORY_OFFSET = 4 + 2 + 1;
+
+    private static final byte[] LOOP = {0x12, 0x00};
+    private static final byte[] COUNT = {0x70, 0x01, 0x12, 0x00};
+    private static final byte[] CLEAR = {0x00, (byte) 0xE0, 0x12, 0x02};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void programsRoundTrip() throws IOException {
+        String[] names = {"loop.ch8", "count.ch8", "games/clear.ch8", "copy of count.ch8"};
+        byte[][] programs = {LOOP, COUNT, CLEAR, COUNT.clone()};
+        RomPackWriter writer = new RomPackWriter();
+        for (int ii = 0; ii < names.length; ii++) {
+            writer.add(names[ii], programs[ii]);
+        }
+        Path path = directory.resolve("roms.c8pk");
+        writer.write(path);
+
+        // The copy shares the data of the original.
+        int namesSize = Arrays.stream(names).mapToInt(name -> name.getBytes(StandardCharsets.UTF_8).length).sum();
+        int dataSize = LOOP.length + COUNT.length + CLEAR.length;
+        assertEquals(RomPack.HEADER_SIZE + names.length * RomPack.ENTRY_SIZE + namesSize + dataSize, Files.size(path));
+
+        try (RomPack pack = RomPack.open(path)) {
+            assertEquals(names.length, pack.size());
+            for (int ii = 0; ii < names.length; ii++) {
+                int entry = pack.find(names[ii]);
+                assertEquals(names[ii], pack.getName(entry));
+                assertEquals(programs[ii].length, pack.getLength(entry));
+                assertArrayEquals(programs[ii], pack.read(entry), names[ii]);
+
+                long hash = RomPack.hash(programs[ii]);
+                assertEquals(hash, pack.getHash(entry));
+                assertArrayEquals(programs[ii], pack.read(pack.find(hash)), names[ii]);
+
+                Chip8Emulator emulator = new Chip8Emulator();
+                emulator.init();
+                pack.load(entry, emulator);
+                assertArrayEquals(programs[ii], memory(emulator, 0x200, programs[ii].length), names[ii]);
+            }
+            assertEquals(-1, pack.find("missing.ch8"));
+            assertEquals(-1, pack.find(RomPack.hash(new byte[] {0x00, (byte) 0xE0})));
+        }
+    }
+
+    @Test
+    void programsSharingAHashKeepTheirOwnData() throws IOException {
+        Path path = directory.resolve("collision.c8pk");
+        new RomPackWriter().add("count.ch8", COUNT, 42).add("clear.ch8", CLEAR, 42).add("again.ch8", COUNT, 42)
+                .write(path);
+
+        try (RomPack pack = RomPack.open(path)) {
+            assertArrayEquals(COUNT, pack.read(pack.find("count.ch8")));
+            assertArrayEquals(CLEAR, pack.read(pack.find("clear.ch8")));
+            assertArrayEquals(COUNT, pack.read(pack.find("again.ch8")));
+        }
+        int namesSize = "count.ch8".length() + "clear.ch8".length() + "again.ch8".length();
+        assertEquals(RomPack.HEADER_SIZE + 3 * RomPack.ENTRY_SIZE + namesSize + COUNT.length + CLEAR.length,
+                Files.size(path));
+    }
+
+    private static byte[] memory(Chip8Emulator emulator, int address, int length) {
+        ByteBuffer state = ByteBuffer.allocate(emulator.getStateSize());
+        emulator.saveState(state);
+        return Arrays.copyOfRange(state.array(), STATE_MEMORY_OFFSET + address, STATE_MEMORY_OFFSET + address + length);
+    }
+}
@@ -0,0 +1,60 @@
+package be.sanderl.chip8emu.server;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProtocolTest {
+
+    @Test
+    void rowsRoundTrip() {
+        long[] rows = {0, -1L, 0xAAAAAAAAAAAAAAAAL, 0x5555555555555555L, 0x8000000000000001L, 0x00FF00FF00FF00FFL};
+        for (long row : rows) {
+            ByteBuffer buffer = ByteBuffer.allocate(66);
+            Protocol.encodeRow(row, buffer);
+            buffer.flip();
+            assertEquals(row, Protocol.decodeRow(buffer));
+            assertEquals(buffer.limit(), buffer.position());
+        }
+    }
+
+    @Test
+    void alternatingFrameFitsInEveryMode() {
+        for (Chip8Mode mode : Chip8Mode.values()) {
+            Chip8Emulator emulator = new Chip8Emulator(mode);
+            emulator.init();
+            if (mode != Chip8Mode.CHIP8) {
+                // HIGH, so every row of every plane is sent at full width.
+                emulator.loadProgram(new byte[] {0x00, (byte) 0xFF, 0x12, 0x02});
+                emulator.runCycle();
+            }
+            for (int plane = 0; plane < mode.getPlaneCount(); plane++) {
+                Arrays.fill(emulator.getPlane(plane), 0xAAAAAAAAAAAAAAAAL);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(Protocol.maxFrameSize(mode));
+            Protocol.encodeFrame(7, emulator, -1L, buffer);
+            assertEquals(buffer.capacity(), buffer.position(), mode.name());
+
+            buffer.flip();
+            assertEquals(Protocol.FRAME, buffer.get());
+            assertEquals(buffer.limit() - Protocol.HEADER_SIZE, buffer.getShort() & 0xFFFF);
+            assertEquals(7, buffer.getInt());
+            int width = buffer.getShort();
+            int height = buffer.getShort();
+            int planeCount = buffer.get();
+            assertEquals(mode.getMaxWidth(), width);
+            assertEquals(mode.getMaxHeight(), height);
+            assertEquals(mode.getPlaneCount(), planeCount);
+            assertEquals(-1L >>> (64 - height), buffer.getLong());
+            for (int word = 0; word < planeCount * height * width / 64; word++) {
+                assertEquals(0xAAAAAAAAAAAAAAAAL, Protocol.decodeRow(buffer));
+            }
+        }
+    }
+}
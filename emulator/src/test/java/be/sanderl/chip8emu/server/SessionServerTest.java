@@ -0,0 +1,136 @@
+package be.sanderl.chip8emu.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Timeout(10)
+class SessionServerTest {
+
+    // CALL 20A: calls itself until the stack overflows
+    private static final byte[] RECURSION = crashAfterDelay(0x22, 0x0A);
+    // RET with nothing on the stack
+    private static final byte[] RETURN = crashAfterDelay(0x00, 0xEE);
+    // Jumps to the last instruction in memory, which runs off its end
+    private static final byte[] RUN_AWAY = crashAfterDelay(0x1F, 0xFE);
+    // I = the font's 0, draw it, then loop forever
+    private static final byte[] DRAW = {(byte) 0xA0, 0x00, (byte) 0xD0, 0x05, 0x12, 0x04};
+
+    private SessionServer server;
+    private Thread thread;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = SessionServer.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 10);
+        thread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException ioe) {
+                throw new IllegalStateException(ioe);
+            }
+        });
+        thread.start();
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        server.close();
+        thread.join();
+    }
+
+    @Test
+    void crashingProgramOnlyEndsItsOwnSession() throws IOException {
+        for (byte[] program : new byte[][] {RECURSION, RETURN, RUN_AWAY}) {
+            try (SocketChannel healthy = connect(); SocketChannel crashing = connect()) {
+                int healthyId = create(healthy, DRAW);
+                send(healthy, Protocol.ATTACH, ByteBuffer.allocate(4).putInt(healthyId).flip());
+                assertEquals(Protocol.FRAME, read(healthy).get());
+
+                int crashingId = create(crashing, program);
+                send(crashing, Protocol.ATTACH, ByteBuffer.allocate(4).putInt(crashingId).flip());
+                ByteBuffer message = readSkippingFrames(crashing);
+                assertEquals(Protocol.DESTROYED, message.get());
+                assertEquals(crashingId, message.getInt());
+
+                // The server keeps running the other session and accepting new ones.
+                assertEquals(1, server.getSessionCount());
+                send(healthy, Protocol.DETACH, ByteBuffer.allocate(0));
+                send(healthy, Protocol.ATTACH, ByteBuffer.allocate(4).putInt(healthyId).flip());
+                assertEquals(Protocol.FRAME, read(healthy).get());
+                send(healthy, Protocol.DESTROY, ByteBuffer.allocate(4).putInt(healthyId).flip());
+                assertEquals(Protocol.DESTROYED, readSkippingFrames(healthy).get());
+            }
+        }
+    }
+
+    /**
+     * Waits half a second on the delay timer, leaving time to attach, before running the given instruction.
+     */
+    private static byte[] crashAfterDelay(int high, int low) {
+        return new byte[] {
+                0x60, 0x1E,             // 200: V0 = 30
+                (byte) 0xF0, 0x15,      // 202: DT = V0
+                (byte) 0xF0, 0x07,      // 204: V0 = DT
+                0x30, 0x00,             // 206: skip the jump once V0 = 0
+                0x12, 0x04,             // 208: jump to 204
+                (byte) high, (byte) low // 20A
+        };
+    }
+
+    private SocketChannel connect() throws IOException {
+        return SocketChannel.open(server.getAddress());
+    }
+
+    private static int create(SocketChannel channel, byte[] program) throws IOException {
+        send(channel, Protocol.CREATE, ByteBuffer.wrap(program));
+        ByteBuffer message = read(channel);
+        assertEquals(Protocol.CREATED, message.get());
+        return message.getInt();
+    }
+
+    private static void send(SocketChannel channel, byte type, ByteBuffer payload) throws IOException {
+        ByteBuffer message = ByteBuffer.allocate(Protocol.HEADER_SIZE + payload.remaining());
+        message.put(type).putShort((short) payload.remaining()).put(payload).flip();
+        while (message.hasRemaining()) {
+            channel.write(message);
+        }
+    }
+
+    private static ByteBuffer readSkippingFrames(SocketChannel channel) throws IOException {
+        ByteBuffer message = read(channel);
+        while (message.get(0) == Protocol.FRAME) {
+            message = read(channel);
+        }
+        return message;
+    }
+
+    /**
+     * @return the message with its type, without the length
+     */
+    private static ByteBuffer read(SocketChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Protocol.HEADER_SIZE);
+        readFully(channel, header);
+        ByteBuffer message = ByteBuffer.allocate(1 + (header.getShort(1) & 0xFFFF));
+        message.put(header.get(0));
+        readFully(channel, message);
+        return message.flip();
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+}
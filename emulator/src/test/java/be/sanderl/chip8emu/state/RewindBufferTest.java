@@ -0,0 +1,103 @@
+package be.sanderl.chip8emu.state;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RewindBufferTest {
+
+    // Draws digits at random positions and keeps their BCD in memory, so every frame changes the display and memory.
+    private static final byte[] PROGRAM = {
+            (byte) 0xC0, 0x3F,             // 200: V0 = random & 3F
+            (byte) 0xC1, 0x1F,             // 202: V1 = random & 1F
+            (byte) 0xF2, 0x29,             // 204: I = digit of V2
+            (byte) 0xD0, 0x15,             // 206: draw it at V0, V1
+            0x72, 0x01,                    // 208: V2 += 1
+            (byte) 0xA3, 0x00,             // 20A: I = 300
+            (byte) 0xF2, 0x33,             // 20C: BCD of V2 at 300 - 302
+            (byte) 0xF3, 0x15,             // 20E: DT = V3
+            0x73, 0x07,                    // 210: V3 += 7
+            0x12, 0x00,                    // 212: loop
+    };
+
+    @Test
+    void rewindRestoresTheStateOfThatFrame() {
+        for (Chip8Mode mode : Chip8Mode.values()) {
+            for (int frames : new int[] {0, 1, 3, 4, 5, 17, 39}) {
+                Chip8Emulator emulator = emulator(mode);
+                RewindBuffer buffer = new RewindBuffer(mode, 1 << 20, 4);
+                byte[][] states = record(emulator, buffer, 40);
+
+                assertEquals(frames, buffer.rewind(frames, emulator));
+                assertArrayEquals(states[states.length - 1 - frames], state(emulator), mode + " " + frames);
+                assertEquals(states.length - 1 - frames, buffer.getAvailableFrames());
+            }
+        }
+    }
+
+    @Test
+    void recordingContinuesFromTheRewoundFrame() {
+        Chip8Emulator emulator = emulator(Chip8Mode.CHIP8);
+        RewindBuffer buffer = new RewindBuffer(1 << 20, 4);
+        record(emulator, buffer, 20);
+        buffer.rewind(7, emulator);
+        byte[][] states = record(emulator, buffer, 10);
+
+        assertEquals(22, buffer.getAvailableFrames());
+        buffer.rewind(6, emulator);
+        assertArrayEquals(states[3], state(emulator));
+    }
+
+    @Test
+    void fullBufferEvictsTheOldestFrames() {
+        Chip8Mode mode = Chip8Mode.CHIP8;
+        int budget = Chip8Emulator.stateSize(mode) * 3;
+        Chip8Emulator emulator = emulator(mode);
+        RewindBuffer buffer = new RewindBuffer(mode, budget, 10);
+        byte[][] states = record(emulator, buffer, 500);
+
+        assertTrue(buffer.getMemoryUsed() <= budget);
+        int available = buffer.getAvailableFrames();
+        assertTrue(available > 0 && available < states.length - 1, String.valueOf(available));
+
+        // The oldest frame left is still complete, even though whatever it was based on got evicted.
+        assertEquals(available, buffer.rewind(available + 100, emulator));
+        assertArrayEquals(states[states.length - 1 - available], state(emulator));
+        assertEquals(0, buffer.getAvailableFrames());
+    }
+
+    private static Chip8Emulator emulator(Chip8Mode mode) {
+        Chip8Emulator emulator = new Chip8Emulator(mode);
+        emulator.init();
+        emulator.setSeed(7);
+        emulator.loadProgram(PROGRAM);
+        return emulator;
+    }
+
+    /**
+     * Runs and records the given amount of frames.
+     *
+     * @return the state of every recorded frame
+     */
+    private static byte[][] record(Chip8Emulator emulator, RewindBuffer buffer, int frames) {
+        byte[][] states = new byte[frames][];
+        for (int ii = 0; ii < frames; ii++) {
+            emulator.runFrame(50);
+            buffer.record(emulator);
+            states[ii] = state(emulator);
+        }
+        return states;
+    }
+
+    private static byte[] state(Chip8Emulator emulator) {
+        ByteBuffer buffer = ByteBuffer.allocate(emulator.getStateSize());
+        emulator.saveState(buffer);
+        return buffer.array();
+    }
+}
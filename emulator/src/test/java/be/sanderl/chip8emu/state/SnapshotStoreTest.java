@@ -0,0 +1,125 @@
+package be.sanderl.chip8emu.state;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotStoreTest {
+
+    private static final int FRAMES = 30;
+
+    // Draws digits at random positions and keeps their BCD in memory, so every frame changes the display and memory.
+    private static final byte[] PROGRAM = {
+            (byte) 0xC0, 0x3F,             // 200: V0 = random & 3F
+            (byte) 0xC1, 0x1F,             // 202: V1 = random & 1F
+            (byte) 0xF2, 0x29,             // 204: I = digit of V2
+            (byte) 0xD0, 0x15,             // 206: draw it at V0, V1
+            0x72, 0x01,                    // 208: V2 += 1
+            (byte) 0xA3, 0x00,             // 20A: I = 300
+            (byte) 0xF2, 0x33,             // 20C: BCD of V2 at 300 - 302
+            (byte) 0xF3, 0x15,             // 20E: DT = V3
+            0x73, 0x07,                    // 210: V3 += 7
+            0x12, 0x00,                    // 212: loop
+    };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void stateRoundTripsThroughABuffer() {
+        for (Chip8Mode mode : Chip8Mode.values()) {
+            Chip8Emulator emulator = emulator(mode);
+            ByteBuffer state = ByteBuffer.allocate(emulator.getStateSize());
+            emulator.saveState(state);
+            long[] expected = run(emulator);
+
+            state.flip();
+            emulator.loadState(state);
+            assertArrayEquals(expected, run(emulator), mode.name());
+        }
+    }
+
+    @Test
+    void stateRoundTripsThroughTheStore() throws IOException {
+        for (Chip8Mode mode : Chip8Mode.values()) {
+            Path path = directory.resolve(mode + ".c8ss");
+            Chip8Emulator emulator = emulator(mode);
+            long[] expected;
+            try (SnapshotStore store = SnapshotStore.open(path, mode, 4)) {
+                store.save(2, emulator);
+                expected = run(emulator);
+            }
+
+            // A fresh emulator picks up the saved state from the reopened file.
+            Chip8Emulator restored = new Chip8Emulator(mode);
+            restored.init();
+            try (SnapshotStore store = SnapshotStore.open(path, mode, 4)) {
+                assertFalse(store.isUsed(1));
+                assertTrue(store.load(2, restored));
+            }
+            assertArrayEquals(expected, run(restored), mode.name());
+        }
+    }
+
+    @Test
+    void interruptedSaveLeavesTheSlotUnused() throws IOException {
+        Path path = directory.resolve("interrupted.c8ss");
+        try (SnapshotStore store = SnapshotStore.open(path, 2)) {
+            store.save(0, emulator(Chip8Mode.CHIP8));
+            assertThrows(IllegalStateException.class, () -> store.save(0, new FailingEmulator()));
+            assertFalse(store.isUsed(0));
+            assertFalse(store.load(0, emulator(Chip8Mode.CHIP8)));
+        }
+        try (SnapshotStore store = SnapshotStore.open(path, 2)) {
+            assertFalse(store.isUsed(0));
+        }
+    }
+
+    private static Chip8Emulator emulator(Chip8Mode mode) {
+        Chip8Emulator emulator = new Chip8Emulator(mode);
+        emulator.init();
+        emulator.setSeed(7);
+        emulator.loadProgram(PROGRAM);
+        emulator.runFrame(50);
+        return emulator;
+    }
+
+    /**
+     * @return the state hash after every frame
+     */
+    private static long[] run(Chip8Emulator emulator) {
+        long[] hashes = new long[FRAMES];
+        for (int ii = 0; ii < FRAMES; ii++) {
+            emulator.runFrame(50);
+            hashes[ii] = emulator.getStateHash();
+        }
+        return hashes;
+    }
+
+    /**
+     * Gets halfway through writing its state, then fails like a crash in the middle of saving would.
+     */
+    private static final class FailingEmulator extends Chip8Emulator {
+
+        FailingEmulator() {
+            init();
+        }
+
+        @Override
+        public void saveState(ByteBuffer buffer) {
+            byte[] half = new byte[getStateSize() / 2];
+            buffer.put(half);
+            throw new IllegalStateException("Interrupted");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package be.sanderl.chip8emu.state;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatePoolTest {
+
+    private static final int INSTANCES = 5;
+    private static final int ROUNDS = 10;
+    private static final int INSTRUCTIONS_PER_FRAME = 50;
+
+    // Draws digits at random positions and keeps their BCD in memory, so every frame changes the display and memory.
+    private static final byte[] PROGRAM = {
+            (byte) 0xC0, 0x3F,             // 200: V0 = random & 3F
+            (byte) 0xC1, 0x1F,             // 202: V1 = random & 1F
+            (byte) 0xF2, 0x29,             // 204: I = digit of V2
+            (byte) 0xD0, 0x15,             // 206: draw it at V0, V1
+            0x72, 0x01,                    // 208: V2 += 1
+            (byte) 0xA3, 0x00,             // 20A: I = 300
+            (byte) 0xF2, 0x33,             // 20C: BCD of V2 at 300 - 302
+            (byte) 0xF3, 0x15,             // 20E: DT = V3
+            0x73, 0x07,                    // 210: V3 += 7
+            0x12, 0x00,                    // 212: loop
+    };
+
+    @Test
+    void pooledInstancesRunLikeStandaloneOnes() {
+        for (Chip8Mode mode : Chip8Mode.values()) {
+            StatePool pool = new StatePool(mode, INSTANCES);
+            Chip8Emulator[] standalone = new Chip8Emulator[INSTANCES];
+            int[] slots = new int[INSTANCES];
+            for (int ii = 0; ii < INSTANCES; ii++) {
+                // Different seeds send every instance its own way.
+                standalone[ii] = emulator(mode, ii);
+                slots[ii] = pool.allocate(emulator(mode, ii));
+            }
+
+            // A single worker takes turns running the slots for a different amount of frames each.
+            Chip8Emulator worker = new Chip8Emulator(mode);
+            worker.init();
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int ii = 0; ii < INSTANCES; ii++) {
+                    int frames = 1 + (round + ii) % 3;
+                    pool.run(slots[ii], worker, frames, INSTRUCTIONS_PER_FRAME);
+                    for (int frame = 0; frame < frames; frame++) {
+                        standalone[ii].runFrame(INSTRUCTIONS_PER_FRAME);
+                    }
+                    assertArrayEquals(state(standalone[ii]), state(pool, slots[ii]),
+                            String.format("%s instance %d in round %d", mode, ii, round));
+                }
+            }
+        }
+    }
+
+    @Test
+    void bulkAllocatedSlotsStartFromTheSameState() {
+        Chip8Emulator initial = emulator(Chip8Mode.XO_CHIP, 3);
+        initial.runFrame(INSTRUCTIONS_PER_FRAME);
+        StatePool pool = new StatePool(Chip8Mode.XO_CHIP, 4);
+        int[] slots = new int[6];
+        assertEquals(4, pool.allocate(initial, slots));
+        assertEquals(4, pool.getUsedSlots());
+
+        Chip8Emulator worker = new Chip8Emulator(Chip8Mode.XO_CHIP);
+        worker.init();
+        for (int ii = 0; ii < 4; ii++) {
+            pool.run(slots[ii], worker, 2, INSTRUCTIONS_PER_FRAME);
+        }
+        initial.runFrame(INSTRUCTIONS_PER_FRAME);
+        initial.runFrame(INSTRUCTIONS_PER_FRAME);
+        for (int ii = 0; ii < 4; ii++) {
+            assertArrayEquals(state(initial), state(pool, slots[ii]), String.valueOf(ii));
+        }
+    }
+
+    private static Chip8Emulator emulator(Chip8Mode mode, long seed) {
+        Chip8Emulator emulator = new Chip8Emulator(mode);
+        emulator.init();
+        emulator.setSeed(seed);
+        emulator.loadProgram(PROGRAM);
+        return emulator;
+    }
+
+    private static byte[] state(StatePool pool, int slot) {
+        Chip8Emulator probe = new Chip8Emulator(pool.getMode());
+        probe.init();
+        pool.load(slot, probe);
+        return state(probe);
+    }
+
+    private static byte[] state(Chip8Emulator emulator) {
+        ByteBuffer buffer = ByteBuffer.allocate(emulator.getStateSize());
+        emulator.saveState(buffer);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,96 @@
+package be.sanderl.chip8emu.state;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TranspositionTableTest {
+
+    @Test
+    void addsAndFindsHashes() {
+        TranspositionTable table = new TranspositionTable(100);
+        assertEquals(128, table.getCapacity());
+
+        long[] hashes = {0, 1, -1L, 0x123456789ABCDEF0L};
+        for (long hash : hashes) {
+            assertFalse(table.contains(hash));
+            assertTrue(table.add(hash));
+        }
+        for (long hash : hashes) {
+            assertTrue(table.contains(hash));
+            assertFalse(table.add(hash));
+        }
+        assertEquals(hashes.length, table.size());
+        assertFalse(table.contains(2));
+
+        // The hash 0 is stored as another one, which therefore counts as seen as well.
+        assertFalse(table.add(0xD6E8FEB86659FD93L));
+    }
+
+    @Test
+    void collidingHashesProbeTheNextEntries() {
+        TranspositionTable table = new TranspositionTable(64);
+        // All of them want the same entry.
+        for (int ii = 1; ii <= 16; ii++) {
+            assertTrue(table.add((long) ii << 32 | 5));
+        }
+        for (int ii = 1; ii <= 16; ii++) {
+            assertTrue(table.contains((long) ii << 32 | 5));
+        }
+        assertEquals(16, table.size());
+        assertEquals(0, table.getOverflows());
+
+        // Once all nearby entries are taken, a new hash is reported as new without replacing any of them.
+        assertTrue(table.add(17L << 32 | 5));
+        assertTrue(table.add(17L << 32 | 5));
+        assertFalse(table.contains(17L << 32 | 5));
+        assertEquals(2, table.getOverflows());
+        assertEquals(16, table.size());
+        assertTrue(table.contains(1L << 32 | 5));
+
+        // A hash wanting another entry still finds room further on.
+        assertTrue(table.add(6));
+        assertTrue(table.contains(6));
+    }
+
+    @Test
+    void clearForgetsEverything() {
+        TranspositionTable table = new TranspositionTable(16);
+        for (int ii = 0; ii < 40; ii++) {
+            table.add(ii);
+        }
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(0, table.getOverflows());
+        assertFalse(table.contains(3));
+        assertTrue(table.add(3));
+    }
+
+    @Test
+    void everyHashIsNewForExactlyOneThread() throws InterruptedException {
+        TranspositionTable table = new TranspositionTable(1 << 16);
+        AtomicInteger added = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int ii = 0; ii < threads.length; ii++) {
+            threads[ii] = new Thread(() -> {
+                for (long hash = 1; hash <= 10_000; hash++) {
+                    if (table.add(hash * 0x9E3779B97F4A7C15L)) {
+                        added.incrementAndGet();
+                    }
+                }
+            });
+            threads[ii].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(10_000, added.get());
+        assertEquals(10_000, table.size());
+        assertEquals(0, table.getOverflows());
+    }
+}
@@ -0,0 +1,103 @@
+package be.sanderl.chip8emu.trace;
+
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.Disassembler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TraceDecoderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsDecodeToWhatWasRecorded() throws IOException {
+        Path path = directory.resolve("trace.c8tr");
+        try (TraceRecorder recorder = new TraceRecorder(path, Chip8Mode.XO_CHIP)) {
+            recorder.record(0, 0x200, 0x6A12, 0x0000, 0xA, (byte) 0x12, (byte) 0x00, (byte) 0, (byte) 0, (byte) 0);
+            recorder.flush();
+            recorder.record(70_000, 0xFFFE, 0xF233, 0xFFF0, 0x2, (byte) 0xFF, (byte) 0x01, (byte) 0x3C, (byte) 0x80,
+                    (byte) 0xF);
+        }
+
+        TraceDecoder decoder = new TraceDecoder(path);
+        assertEquals(Chip8Mode.XO_CHIP, decoder.getMode());
+        assertEquals(2, decoder.getRecordCount());
+        assertArrayEquals(new String[] {
+                line(0, "0200  6A12", 0x6A12, "I=0000 VA=12 VF=00 DT=00 ST=00 SP=0"),
+                line(70_000, "FFFE  F233", 0xF233, "I=FFF0 V2=FF VF=01 DT=3C ST=80 SP=F"),
+        }, decode(decoder));
+    }
+
+    @Test
+    void firstRecordAfterAGapSaysRecordsWereDropped() throws IOException, InterruptedException {
+        Path path = directory.resolve("dropped.c8tr");
+        try (TraceRecorder recorder = new TraceRecorder(path, Chip8Mode.CHIP8, 2)) {
+            // Nothing is handed to the writer before the flush, so everything past the two records in the ring is lost.
+            for (int ii = 0; ii < 5; ii++) {
+                recorder.record(1, 0x200 + ii * 2, 0x7001, 0, 0, (byte) ii, (byte) 0, (byte) 0, (byte) 0, (byte) 0);
+            }
+            assertEquals(3, recorder.getDroppedRecords());
+
+            recorder.flush();
+            while (Files.size(path) < TraceRecorder.HEADER_SIZE + 2 * TraceRecorder.RECORD_SIZE) {
+                Thread.sleep(1);
+            }
+            // The writer may not have reported its progress yet, which drops a few more.
+            long dropped;
+            do {
+                dropped = recorder.getDroppedRecords();
+                recorder.record(2, 0x20A, 0x7001, 0, 0, (byte) 5, (byte) 0, (byte) 0, (byte) 0, (byte) 0);
+            } while (recorder.getDroppedRecords() != dropped);
+        }
+
+        String[] lines = decode(new TraceDecoder(path));
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].contains("0200  7001") && lines[1].contains("0202  7001"), lines[0] + lines[1]);
+        assertEquals("... records dropped ...", lines[2]);
+        assertTrue(lines[3].contains("020A  7001"), lines[3]);
+    }
+
+    @Test
+    void rejectsUnknownModes() throws IOException {
+        Path path = directory.resolve("mode.c8tr");
+        ByteBuffer header = ByteBuffer.allocate(TraceRecorder.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(TraceRecorder.FILE_MAGIC).putShort(TraceRecorder.FILE_VERSION);
+        header.put((byte) Chip8Mode.values().length).put((byte) TraceRecorder.RECORD_SIZE);
+        Files.write(path, header.array());
+
+        assertThrows(IllegalArgumentException.class, () -> new TraceDecoder(path));
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path path = directory.resolve("other.c8tr");
+        Files.write(path, new byte[] {1, 2, 3});
+
+        assertThrows(IllegalArgumentException.class, () -> new TraceDecoder(path));
+    }
+
+    private static String line(int frame, String pcAndInstruction, int instruction, String registers) {
+        return String.format("%8d  %s  %-16s %s", frame, pcAndInstruction,
+                Disassembler.disassemble(instruction, Chip8Mode.XO_CHIP), registers);
+    }
+
+    private static String[] decode(TraceDecoder decoder) {
+        StringWriter listing = new StringWriter();
+        decoder.decode(new PrintWriter(listing));
+        return listing.toString().split(System.lineSeparator());
+    }
+}
@@ -0,0 +1,61 @@
+package be.sanderl.chip8emu;
+
+/**
+ * A recompiled basic block together with the memory range it was compiled from.
+ */
+final class Block {
+
+    // Memory range [start, end) the instructions of this block were read from
+    final int start;
+    final int end;
+
+    final int instructionCount;
+    final int lastInstruction;
+    final CompiledBlock code;
+
+    // Whether the block ends in a 1nnn to an address inside or before it, which might be an idle loop
+    final boolean jumpsBackward;
+
+    // Opcode families (the instruction's upper nibble) occurring in this block, and how often each of them occurs
+    private final byte[] families;
+    private final int[] familyCounts;
+
+    Block(int start, int end, char[] instructions, CompiledBlock code) {
+        this.start = start;
+        this.end = end;
+        this.instructionCount = (end - start) / 2;
+        this.lastInstruction = instructions[instructionCount - 1];
+        this.code = code;
+        this.jumpsBackward = lastInstruction >>> 12 == 0x1 && (lastInstruction & 0xFFF) < end;
+
+        int[] counts = new int[16];
+        int distinct = 0;
+        for (int ii = 0; ii < instructionCount; ii++) {
+            if (counts[instructions[ii] >>> 12]++ == 0) {
+                distinct++;
+            }
+        }
+
+        families = new byte[distinct];
+        familyCounts = new int[distinct];
+        for (int family = 0, ii = 0; family < counts.length; family++) {
+            if (counts[family] != 0) {
+                families[ii] = (byte) family;
+                familyCounts[ii++] = counts[family];
+            }
+        }
+    }
+
+    /**
+     * Adds the instructions of one execution of this block to the per-family counters.
+     */
+    void count(long[] opcodeCounts) {
+        for (int ii = 0; ii < families.length; ii++) {
+            opcodeCounts[families[ii]] += familyCounts[ii];
+        }
+    }
+
+    boolean covers(int address) {
+        return address >= start && address < end;
+    }
+}
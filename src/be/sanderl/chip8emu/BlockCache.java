@@ -0,0 +1,57 @@
+package be.sanderl.chip8emu;
+
+import java.util.Arrays;
+
+/**
+ * Recompiled blocks of a single emulator, indexed by their start address.
+ */
+final class BlockCache {
+
+    private final Block[] blocks;
+
+    // Marks every memory address that is part of at least one cached block
+    private final boolean[] code;
+
+    BlockCache(int memorySize) {
+        blocks = new Block[memorySize];
+        code = new boolean[memorySize];
+    }
+
+    Block get(int address) {
+        return blocks[address];
+    }
+
+    void put(Block block) {
+        blocks[block.start] = block;
+        Arrays.fill(code, block.start, block.end, true);
+    }
+
+    /**
+     * Drops every block that was compiled from the given address. Writes to data are by far the most common,
+     * so those only cost a single array lookup; writes to code are rare enough to afford a full scan.
+     */
+    void invalidate(int address) {
+        if (!code[address]) {
+            return;
+        }
+
+        Arrays.fill(code, false);
+        for (int ii = 0; ii < blocks.length; ii++) {
+            Block block = blocks[ii];
+            if (block == null) {
+                continue;
+            }
+
+            if (block.covers(address)) {
+                blocks[ii] = null;
+            } else {
+                Arrays.fill(code, block.start, block.end, true);
+            }
+        }
+    }
+
+    void clear() {
+        Arrays.fill(blocks, null);
+        Arrays.fill(code, false);
+    }
+}
@@ -0,0 +1,206 @@
+package be.sanderl.chip8emu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the class file of a single {@link CompiledBlock} implementation. The generated {@code execute} method is
+ * straight-line code without any branches, so it needs no stack map frames and the class file stays minimal.
+ */
+final class BlockClassWriter {
+
+    private static final int CLASS_FILE_VERSION = 52;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ALOAD_0 = 0x2A;
+    private static final int ALOAD_1 = 0x2B;
+    private static final int RETURN = 0xB1;
+    private static final int INVOKEVIRTUAL = 0xB6;
+    private static final int INVOKESPECIAL = 0xB7;
+
+    private static final String CLASS_NAME = "be/sanderl/chip8emu/GeneratedBlock";
+    private static final String EMULATOR_CLASS = "be/sanderl/chip8emu/Chip8Emulator";
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int constantCount = 1;
+
+    private final ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+    private final DataOutputStream code = new DataOutputStream(codeBytes);
+
+    /**
+     * Appends a call to {@code emulator.<method>(operands...)}; the method has to return void and only take ints.
+     */
+    void invoke(String method, int... operands) {
+        try {
+            code.writeByte(ALOAD_1);
+            StringBuilder descriptor = new StringBuilder("(");
+            for (int operand : operands) {
+                pushInt(operand);
+                descriptor.append('I');
+            }
+            descriptor.append(")V");
+
+            code.writeByte(INVOKEVIRTUAL);
+            code.writeShort(methodRef(EMULATOR_CLASS, method, descriptor.toString()));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    byte[] toByteArray() {
+        try {
+            int thisClass = classRef(CLASS_NAME);
+            int superClass = classRef("java/lang/Object");
+            int blockInterface = classRef("be/sanderl/chip8emu/CompiledBlock");
+            int objectConstructor = methodRef("java/lang/Object", "<init>", "()V");
+            int constructorName = utf8("<init>");
+            int constructorDescriptor = utf8("()V");
+            int executeName = utf8("execute");
+            int executeDescriptor = utf8("(L" + EMULATOR_CLASS + ";)V");
+            int codeAttribute = utf8("Code");
+
+            ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(classBytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_FILE_VERSION);
+            out.writeShort(constantCount);
+            constantPoolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(blockInterface);
+            out.writeShort(0); // fields
+            out.writeShort(2); // methods
+
+            // public GeneratedBlock() { super(); }
+            byte[] constructorCode = new byte[] {
+                    (byte) ALOAD_0,
+                    (byte) INVOKESPECIAL, (byte) (objectConstructor >> 8), (byte) objectConstructor,
+                    (byte) RETURN
+            };
+            writeMethod(out, constructorName, constructorDescriptor, codeAttribute, 1, 1, constructorCode);
+
+            // public void execute(Chip8Emulator emulator) { emulator.op(...); ... }
+            code.writeByte(RETURN);
+            writeMethod(out, executeName, executeDescriptor, codeAttribute, 4, 2, codeBytes.toByteArray());
+
+            out.writeShort(0); // attributes
+            return classBytes.toByteArray();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private void writeMethod(DataOutputStream out, int name, int descriptor, int codeAttribute,
+                             int maxStack, int maxLocals, byte[] bytecode) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(12 + bytecode.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    private void pushInt(int value) throws IOException {
+        if (value >= 0 && value <= 5) {
+            code.writeByte(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.writeByte(BIPUSH);
+            code.writeByte(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.writeByte(SIPUSH);
+            code.writeShort(value);
+        } else {
+            // XO-CHIP addresses go up to 0xFFFF
+            code.writeByte(LDC_W);
+            code.writeShort(integer(value));
+        }
+    }
+
+    private int integer(int value) throws IOException {
+        String key = "I" + value;
+        Integer index = constants.get(key);
+        if (index == null) {
+            constantPool.writeByte(CONSTANT_INTEGER);
+            constantPool.writeInt(value);
+            index = addConstant(key);
+        }
+        return index;
+    }
+
+    private int utf8(String value) throws IOException {
+        String key = "U" + value;
+        Integer index = constants.get(key);
+        if (index == null) {
+            constantPool.writeByte(CONSTANT_UTF8);
+            constantPool.writeUTF(value);
+            index = addConstant(key);
+        }
+        return index;
+    }
+
+    private int classRef(String internalName) throws IOException {
+        String key = "C" + internalName;
+        Integer index = constants.get(key);
+        if (index == null) {
+            int name = utf8(internalName);
+            constantPool.writeByte(CONSTANT_CLASS);
+            constantPool.writeShort(name);
+            index = addConstant(key);
+        }
+        return index;
+    }
+
+    private int methodRef(String owner, String name, String descriptor) throws IOException {
+        String key = "M" + owner + "." + name + descriptor;
+        Integer index = constants.get(key);
+        if (index == null) {
+            int ownerClass = classRef(owner);
+            int methodName = utf8(name);
+            int methodDescriptor = utf8(descriptor);
+            constantPool.writeByte(CONSTANT_NAME_AND_TYPE);
+            constantPool.writeShort(methodName);
+            constantPool.writeShort(methodDescriptor);
+            int nameAndType = addConstant("N" + owner + "." + name + descriptor);
+
+            constantPool.writeByte(CONSTANT_METHOD_REF);
+            constantPool.writeShort(ownerClass);
+            constantPool.writeShort(nameAndType);
+            index = addConstant(key);
+        }
+        return index;
+    }
+
+    private int addConstant(String key) {
+        int index = constantCount++;
+        constants.put(key, index);
+        return index;
+    }
+}
@@ -1,10 +1,39 @@
 package be.sanderl.chip8emu;
 
+import be.sanderl.chip8emu.trace.TraceRecorder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 public class Chip8Emulator {
 
     private static final byte INSTRUCTION_SIZE = 2;
     public static final byte NATIVE_SCREEN_WIDTH = 64;
     public static final byte NATIVE_SCREEN_HEIGHT = 32;
+    static final int MEMORY_SIZE = 4096;
+    static final int PROGRAM_START = 0x200;
+    public static final int MAX_PROGRAM_SIZE = MEMORY_SIZE - PROGRAM_START;
+    private static final int REGISTER_COUNT = 16;
+    private static final int STACK_SIZE = 16;
+
+    private static final int NOT_WAITING = -1;
+
+    // Comfortably more than the instruction and registers printed by debug()
+    private static final int DEBUG_TEXT_SIZE = 256;
+
+    // Save states: magic, version, mode, memory, V, I, pc, stack, sp, delay timer, sound timer, key wait, input,
+    // random state, display. Outside of CHIP-8 mode the display is preceded by the resolution, plane mask, flags,
+    // audio pattern and pitch, and consists of every plane at the highest resolution.
+    private static final int STATE_MAGIC = 0x43385354; // "C8ST"
+    private static final short STATE_VERSION = 4;
+    private static final int FLAG_COUNT = 16;
+    static final int AUDIO_PATTERN_SIZE = 16;
+
+    /**
+     * The size of a save state in CHIP-8 mode; see {@link #stateSize(Chip8Mode)} for the other modes.
+     */
+    public static final int STATE_SIZE = stateSize(Chip8Mode.CHIP8);
+
     private static final char[] FONT_SET = new char[] {
             0xF0, 0x90, 0x90, 0x90, 0xF0, // 0
             0x20, 0x60, 0x20, 0x20, 0x70, // 1
@@ -24,13 +53,33 @@ public class Chip8Emulator {
             0xF0, 0x80, 0xF0, 0x80, 0x80  // F
     };
 
+    // SUPER-CHIP's 8x10 digits, extended with the letters of XO-CHIP; located right after the regular font
+    private static final int BIG_FONT_START = 0x50;
+    private static final char[] BIG_FONT_SET = new char[] {
+            0xFF, 0xFF, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xFF, 0xFF, // 0
+            0x18, 0x78, 0x78, 0x18, 0x18, 0x18, 0x18, 0x18, 0xFF, 0xFF, // 1
+            0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, // 2
+            0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, // 3
+            0xC3, 0xC3, 0xC3, 0xC3, 0xFF, 0xFF, 0x03, 0x03, 0x03, 0x03, // 4
+            0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, // 5
+            0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, // 6
+            0xFF, 0xFF, 0x03, 0x03, 0x06, 0x0C, 0x18, 0x18, 0x18, 0x18, // 7
+            0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, // 8
+            0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, // 9
+            0x7E, 0xFF, 0xC3, 0xC3, 0xC3, 0xFF, 0xFF, 0xC3, 0xC3, 0xC3, // A
+            0xFC, 0xFC, 0xC3, 0xC3, 0xFC, 0xFC, 0xC3, 0xC3, 0xFC, 0xFC, // B
+            0x3C, 0xFF, 0xC3, 0xC0, 0xC0, 0xC0, 0xC0, 0xC3, 0xFF, 0x3C, // C
+            0xFC, 0xFE, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xFE, 0xFC, // D
+            0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, // E
+            0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0xC0, 0xC0, 0xC0, 0xC0  // F
+    };
+
+    private final Chip8Mode mode;
+
     // Implementation-specific flags
     public boolean dirtyGraphics;
     public boolean clearScreen;
-    public boolean makeBeep;
     public int instruction;
-    public boolean debugEnabled;
-    public boolean debugStepRequested;
 
     // 4kB 8-bit memory
     private byte[] memory;
@@ -54,300 +103,1042 @@ public class Chip8Emulator {
     private byte delayTimer;
     private byte soundTimer;
 
-    // 16-key keyboard
-    private boolean[] input;
+    // Whether the sound timer was running at the last timer tick; read by the audio thread
+    private volatile boolean soundActive;
+
+    // 16-key keyboard; one bit per key
+    private int keys;
+
+    // Register Fx0A stores the next released key in while the CPU is halted, or NOT_WAITING
+    private int keyWaitRegister;
+
+    // xorshift64* state for Cxkk; never 0
+    private long randomState;
+
+    // Monochrome, 64x32 pixels resolution; one long per row with the leftmost pixel in the most significant bit.
+    // Outside of CHIP-8 mode, rows at a width of 128 pixels take two longs, and this is the first of the planes.
+    private long[] display;
+
+    // Current resolution; only SUPER-CHIP and XO-CHIP ever switch to 128x64
+    private int width;
+    private int height;
+    private int rowWords;
+
+    // XO-CHIP's bit planes, of which Fn01 selects the ones drawing, scrolling and clearing apply to
+    private long[][] planes;
+    private int planeMask;
+
+    // SUPER-CHIP's RPL user flags, see Fx75 and Fx85
+    private byte[] flags;
+
+    // XO-CHIP's audio pattern and its playback rate; the sound itself is still a plain tone
+    private byte[] audioPattern;
+    private int pitch;
 
-    // Monochrome, 64x32 pixels resolution
-    private byte[] display;
+    // One bit per display row that changed since the renderer last picked up the display
+    private long dirtyRows;
+
+    // Decoded form of the instruction starting at each memory address, or 0 if it hasn't been decoded yet
+    private int[] decodeCache;
+    private ExecutionEngine engine = ExecutionEngine.INTERPRETER;
+
+    // Recompiled blocks per memory address, only present while the recompiler is in use
+    private BlockCache blockCache;
+
+    // Set by every jump to an earlier address; the frame loop then checks whether the program is spinning.
+    private boolean backwardJump;
+    private boolean idleLoopDetection = true;
+
+    // Hashes of memory and of the display, kept up to date on every write while state hashing is enabled
+    private boolean stateHashing;
+    private long memoryHash;
+    private long displayHash;
+
+    // Only set while the debugger has anything armed; see runDebugged.
+    private volatile Debugger debugger;
+
+    // Only set while tracing; see runTraced.
+    private volatile TraceRecorder tracer;
+
+    // Text printed by debug(), allocated on first use
+    private byte[] debugText;
+    private int debugLength;
+
+    // Statistics; only ever written by the thread running the emulator, so plain counters suffice
+    private final long[] opcodeCounts = new long[16];
+    private long drawCalls;
+    private long unknownInstructions;
+    private long[] reportedUnknown;
+    private long frames;
+    private long idleInstructions;
+
+    public Chip8Emulator() {
+        this(Chip8Mode.CHIP8);
+    }
+
+    public Chip8Emulator(Chip8Mode mode) {
+        this.mode = mode;
+    }
 
     public void init() {
         dirtyGraphics = false;
         clearScreen = false;
 
-        memory = new byte[4096];
-        V = new byte[16];
+        memory = new byte[mode.getMemorySize()];
+        V = new byte[REGISTER_COUNT];
         I = 0;
         pc = 0x200; // Programs start at this location
-        stack = new char[16];
+        stack = new char[STACK_SIZE];
         sp = 0;
         delayTimer = 0;
         soundTimer = 0;
-        input = new boolean[16];
-        display = new byte[NATIVE_SCREEN_HEIGHT * NATIVE_SCREEN_WIDTH];
+        soundActive = false;
+        keys = 0;
+        keyWaitRegister = NOT_WAITING;
+        setSeed(System.nanoTime());
+        width = NATIVE_SCREEN_WIDTH;
+        height = NATIVE_SCREEN_HEIGHT;
+        rowWords = 1;
+        planes = new long[mode.getPlaneCount()][mode.getMaxHeight() * mode.getMaxWidth() / 64];
+        planeMask = 1;
+        display = planes[0];
+        flags = new byte[FLAG_COUNT];
+        audioPattern = new byte[AUDIO_PATTERN_SIZE];
+        pitch = 64;
+        dirtyRows = allRows();
+        decodeCache = new int[memory.length];
+        if (blockCache != null) {
+            blockCache.clear();
+        } else if (engine == ExecutionEngine.RECOMPILER) {
+            blockCache = new BlockCache(memory.length);
+        }
 
         loadFontSet();
+        rehashMemory();
+        rehashDisplay();
     }
 
     public void runCycle() {
-        /*
-        Instructions are two bytes long, a memory location is 1 byte.
-        Fetch two successive instruction parts, bit-shift the first byte to the left
-        and append the second one to construct the complete instruction.
-         */
-        instruction = (memory[pc] << 8 | (memory[pc + 1] & 0xFF));
+        if (keyWaitRegister != NOT_WAITING) {
+            return;
+        }
+
+        int decoded;
+        if (engine != ExecutionEngine.INTERPRETER) {
+            decoded = decodeCache[pc];
+            if (decoded == 0) {
+                decoded = Decoder.decode(fetch(), mode);
+                decodeCache[pc] = decoded;
+            }
+        } else {
+            decoded = Decoder.decode(fetch(), mode);
+        }
+
+        instruction = decoded & 0xFFFF;
+        opcodeCounts[instruction >>> 12]++;
         pc += INSTRUCTION_SIZE;
 
-        executeInstruction();
-        updateTimers();
+        execute(decoded);
     }
 
-    private void executeInstruction() {
+    /**
+     * Runs a batch of instructions followed by a single tick of the 60 hertz timers.
+     * The CPU speed therefore equals {@code instructionsPerFrame * 60} instructions per second.
+     */
+    public void runFrame(int instructionsPerFrame) {
+        Debugger armed = debugger;
+        TraceRecorder tracing = tracer;
+        if (armed != null) {
+            if (!runDebugged(armed, instructionsPerFrame)) {
+                return;
+            }
+        } else if (tracing != null) {
+            runTraced(tracing, instructionsPerFrame);
+        } else if (engine == ExecutionEngine.RECOMPILER) {
+            runBlocks(instructionsPerFrame);
+        } else {
+            int remaining = instructionsPerFrame;
+            while (remaining > 0 && keyWaitRegister == NOT_WAITING) {
+                remaining -= runInstruction(remaining);
+            }
+        }
+        updateTimers();
+    }
 
-        switch (instruction & 0xF000) {
-            case 0x0000:
-                switch (instruction & 0x00FF) {
-                    case 0xE0: // 00E0 - CLS; Clear display
-                        clearScreen = true;
-                        display = new byte[NATIVE_SCREEN_HEIGHT * NATIVE_SCREEN_WIDTH];
-                        break;
-                    case 0xEE: // 00EE - RET; Return from subroutine
-                        sp--;
-                        pc = stack[sp];
-                        break;
-                    default:
-                        System.err.println(String.format("Unknown instruction %04x", instruction));
+    private void runBlocks(int instructions) {
+        int remaining = instructions;
+        while (remaining > 0 && keyWaitRegister == NOT_WAITING) {
+            Block block = blockCache.get(pc);
+            if (block == null) {
+                block = Recompiler.compile(memory, pc, mode);
+                if (block != null) {
+                    blockCache.put(block);
                 }
-                break;
+            }
 
-            case 0x1000: // 1nnn - JP addr; Jump to location nnn
-                pc = (char) (instruction & 0x0FFF);
-                break;
+            // A block never runs partially, so the tail of a frame that can't fit a whole block is interpreted.
+            if (block != null && block.instructionCount <= remaining) {
+                remaining -= runBlock(block, remaining);
+            } else {
+                remaining -= runInstruction(remaining);
+            }
+        }
+    }
 
-            case 0x2000: // 2nnn - CALL addr; Call subroutine at nnn
-                stack[sp] = pc;
-                sp++;
-                pc = (char) (instruction & 0x0FFF);
-                break;
+    /**
+     * Interprets a single instruction, followed by the idle loop it may have jumped into.
+     *
+     * @return the amount of instructions executed or skipped, at most the remaining amount
+     */
+    int runInstruction(int remaining) {
+        runCycle();
+        return backwardJump ? 1 + skipIdleLoop(remaining - 1) : 1;
+    }
 
-            case 0x3000: { // 3xkk - SE Vx, byte; Skip next instruction if Vx = kk
-                int x = (instruction & 0x0F00) >> 8;
-                if (V[x] == (instruction & 0x00FF)) {
-                    pc += INSTRUCTION_SIZE;
-                }
-                break;
-            }
+    /**
+     * Runs a whole recompiled block, followed by the idle loop it may have jumped into.
+     *
+     * @return the amount of instructions executed or skipped, at most the remaining amount
+     */
+    int runBlock(Block block, int remaining) {
+        block.code.execute(this);
+        block.count(opcodeCounts);
+        instruction = block.lastInstruction;
+        // Within a block the program counter isn't kept up to date, so jp() can't always tell by itself.
+        backwardJump |= block.jumpsBackward;
+        int executed = block.instructionCount;
+        return backwardJump ? executed + skipIdleLoop(remaining - executed) : executed;
+    }
 
-            case 0x4000: { // 4xkk - SNE Vx, byte; Skip next instruction if Vx != kk
-                int x = (instruction & 0x0F00) >> 8;
-                if (V[x] != (instruction & 0x00FF)) {
-                    pc += INSTRUCTION_SIZE;
-                }
-                break;
+    /**
+     * Interprets instruction by instruction, letting the debugger check each of them first. Neither recompiled
+     * blocks nor skipped idle loops would give it that chance.
+     *
+     * @return false if the debugger stopped execution
+     */
+    private boolean runDebugged(Debugger armed, int instructions) {
+        for (int ii = 0; ii < instructions && keyWaitRegister == NOT_WAITING; ii++) {
+            if (armed.shouldBreak()) {
+                return false;
             }
+            runCycle();
+        }
+        return true;
+    }
 
-            case 0x5000: { // 5xy0 - SE Vx, Vy; Skip next instruction if Vx = Vy
-                int x = (instruction & 0x0F00) >> 8;
-                int y = (instruction & 0x00F0) >> 4;
-                if (V[x] == V[y]) {
-                    pc += INSTRUCTION_SIZE;
-                }
-                break;
-            }
+    /**
+     * Interprets instruction by instruction, recording each of them. Recompiled blocks and skipped idle loops would
+     * leave instructions out of the trace.
+     */
+    private void runTraced(TraceRecorder tracing, int instructions) {
+        for (int ii = 0; ii < instructions && keyWaitRegister == NOT_WAITING; ii++) {
+            int address = pc;
+            runCycle();
+            int x = instruction >> 8 & 0xF;
+            tracing.record(frames, address, instruction, I, x, V[x], V[0xF], delayTimer, soundTimer, sp);
+        }
+        tracing.flush();
+    }
+
+    /**
+     * Records every instruction executed from the next frame on into the given trace, or stops recording for null.
+     * The emulator never closes the trace itself. Tracing is ignored while the debugger has anything armed.
+     */
+    public void setTracer(TraceRecorder tracer) {
+        this.tracer = tracer;
+    }
+
+    void setDebugger(Debugger debugger) {
+        this.debugger = debugger;
+    }
+
+    /**
+     * Recognizes loops at the program counter which do nothing but wait for the delay timer or a key, and accounts
+     * for as many of their iterations as fit in the rest of the frame without executing them. Timers and keys only
+     * change between frames, so every one of those iterations would have found the same values and left exactly
+     * the same state behind.
+     *
+     * @return the amount of instructions skipped
+     */
+    private int skipIdleLoop(int remaining) {
+        backwardJump = false;
+        if (!idleLoopDetection || pc + 5 >= memory.length) {
+            return 0;
+        }
+
+        int first = instructionAt(pc);
+        int second = instructionAt(pc + 2);
+        int third = instructionAt(pc + 4);
+        int jumpToStart = 0x1000 | pc;
+        int x = first >> 8 & 0xF;
+        int loopLength;
+        boolean spinning;
+
+        if (first == jumpToStart) {
+            // 1nnn jumping to itself
+            loopLength = 1;
+            spinning = true;
+        } else if ((first & 0xF0FF) == 0xF007 && ((second & 0xF000) == 0x3000 || (second & 0xF000) == 0x4000)
+                && (second >> 8 & 0xF) == x && third == jumpToStart) {
+            // Fx07, 3xkk or 4xkk on the same register, 1nnn back to the Fx07
+            loopLength = 3;
+            boolean equal = (delayTimer & 0xFF) == (second & 0xFF);
+            spinning = (second & 0xF000) == 0x3000 ? !equal : equal;
+        } else if ((first & 0xF0FF) == 0xE09E && second == jumpToStart) {
+            // Ex9E, 1nnn back to the Ex9E
+            loopLength = 2;
+            spinning = (keys & 1 << (V[x] & 0xF)) == 0;
+        } else if ((first & 0xF0FF) == 0xE0A1 && second == jumpToStart) {
+            // ExA1, 1nnn back to the ExA1
+            loopLength = 2;
+            spinning = (keys & 1 << (V[x] & 0xF)) != 0;
+        } else {
+            return 0;
+        }
+
+        int iterations = remaining / loopLength;
+        if (!spinning || iterations == 0) {
+            return 0;
+        }
+
+        // Only whole iterations are skipped, so the program counter ends up at the start of the loop again.
+        if (loopLength == 3) {
+            V[x] = delayTimer;
+        }
+        opcodeCounts[0x1] += iterations;
+        if (loopLength > 1) {
+            opcodeCounts[first >>> 12] += iterations;
+        }
+        if (loopLength > 2) {
+            opcodeCounts[second >>> 12] += iterations;
+        }
+        instruction = jumpToStart;
+
+        int skipped = iterations * loopLength;
+        idleInstructions += skipped;
+        return skipped;
+    }
 
-            case 0x6000: { // 6xkk - LD Vx, byte; Put value kk into register Vx
-                int x = (instruction & 0x0F00) >> 8;
-                V[x] = (byte) (instruction & 0x00FF);
+    int instructionAt(int address) {
+        return (memory[address] & 0xFF) << 8 | (memory[address + 1] & 0xFF);
+    }
+
+    public ExecutionEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * May be called before {@link #init()}, in which case the caches the engine needs are set up by {@code init()}.
+     */
+    public void setEngine(ExecutionEngine engine) {
+        if (this.engine == ExecutionEngine.INTERPRETER && engine != ExecutionEngine.INTERPRETER && decodeCache != null) {
+            Arrays.fill(decodeCache, 0);
+        }
+        this.engine = engine;
+        if (engine == ExecutionEngine.RECOMPILER && blockCache == null && memory != null) {
+            blockCache = new BlockCache(memory.length);
+        }
+    }
+
+    private int fetch() {
+        /*
+        Instructions are two bytes long, a memory location is 1 byte.
+        Fetch two successive instruction parts, bit-shift the first byte to the left
+        and append the second one to construct the complete instruction.
+         */
+        return (memory[pc] & 0xFF) << 8 | (memory[pc + 1] & 0xFF);
+    }
+
+    private void execute(int decoded) {
+        switch (Decoder.handler(decoded)) {
+            case Decoder.CLS:
+                cls();
+                break;
+            case Decoder.RET:
+                ret();
+                break;
+            case Decoder.JP:
+                jp(Decoder.nnn(decoded));
+                break;
+            case Decoder.CALL:
+                call(Decoder.nnn(decoded));
+                break;
+            case Decoder.SE_BYTE:
+                seByte(Decoder.x(decoded), Decoder.kk(decoded));
+                break;
+            case Decoder.SNE_BYTE:
+                sneByte(Decoder.x(decoded), Decoder.kk(decoded));
+                break;
+            case Decoder.SE_REG:
+                seReg(Decoder.x(decoded), Decoder.y(decoded));
+                break;
+            case Decoder.LD_BYTE:
+                ldByte(Decoder.x(decoded), Decoder.kk(decoded));
+                break;
+            case Decoder.ADD_BYTE:
+                addByte(Decoder.x(decoded), Decoder.kk(decoded));
+                break;
+            case Decoder.LD_REG:
+                ldReg(Decoder.x(decoded), Decoder.y(decoded));
+                break;
+            case Decoder.OR:
+                or(Decoder.x(decoded), Decoder.y(decoded));
+                break;
+            case Decoder.AND:
+                and(Decoder.x(decoded), Decoder.y(decoded));
+                break;
+            case Decoder.XOR:
+                xor(Decoder.x(decoded), Decoder.y(decoded));
                 break;
+            case Decoder.ADD_REG:
+                addReg(Decoder.x(decoded), Decoder.y(decoded));
+                break;
+            case Decoder.SUB:
+                sub(Decoder.x(decoded), Decoder.y(decoded));
+                break;
+            case Decoder.SHR:
+                shr(Decoder.x(decoded));
+                break;
+            case Decoder.SUBN:
+                subn(Decoder.x(decoded), Decoder.y(decoded));
+                break;
+            case Decoder.SHL:
+                shl(Decoder.x(decoded));
+                break;
+            case Decoder.SNE_REG:
+                sneReg(Decoder.x(decoded), Decoder.y(decoded));
+                break;
+            case Decoder.LD_I:
+                ldI(Decoder.nnn(decoded));
+                break;
+            case Decoder.JP_V0:
+                jpV0(Decoder.nnn(decoded));
+                break;
+            case Decoder.RND:
+                rnd(Decoder.x(decoded), Decoder.kk(decoded));
+                break;
+            case Decoder.DRW:
+                drw(Decoder.x(decoded), Decoder.y(decoded), Decoder.n(decoded));
+                break;
+            case Decoder.SKP:
+                skp(Decoder.x(decoded));
+                break;
+            case Decoder.SKNP:
+                sknp(Decoder.x(decoded));
+                break;
+            case Decoder.LD_VX_DT:
+                ldVxDt(Decoder.x(decoded));
+                break;
+            case Decoder.LD_VX_K:
+                ldVxK(Decoder.x(decoded));
+                break;
+            case Decoder.LD_DT_VX:
+                ldDtVx(Decoder.x(decoded));
+                break;
+            case Decoder.LD_ST_VX:
+                ldStVx(Decoder.x(decoded));
+                break;
+            case Decoder.ADD_I:
+                addI(Decoder.x(decoded));
+                break;
+            case Decoder.LD_F:
+                ldF(Decoder.x(decoded));
+                break;
+            case Decoder.LD_B:
+                ldB(Decoder.x(decoded));
+                break;
+            case Decoder.LD_I_VX:
+                ldIVx(Decoder.x(decoded));
+                break;
+            case Decoder.LD_VX_I:
+                ldVxI(Decoder.x(decoded));
+                break;
+            case Decoder.SCD:
+                scd(Decoder.n(decoded));
+                break;
+            case Decoder.SCU:
+                scu(Decoder.n(decoded));
+                break;
+            case Decoder.SCR:
+                scr();
+                break;
+            case Decoder.SCL:
+                scl();
+                break;
+            case Decoder.EXIT:
+                exit();
+                break;
+            case Decoder.LOW:
+                low();
+                break;
+            case Decoder.HIGH:
+                high();
+                break;
+            case Decoder.DRW_EXTENDED:
+                drwExtended(Decoder.x(decoded), Decoder.y(decoded), Decoder.n(decoded));
+                break;
+            case Decoder.LD_HF:
+                ldHf(Decoder.x(decoded));
+                break;
+            case Decoder.LD_R_VX:
+                ldRVx(Decoder.x(decoded));
+                break;
+            case Decoder.LD_VX_R:
+                ldVxR(Decoder.x(decoded));
+                break;
+            case Decoder.SAVE_RANGE:
+                saveRange(Decoder.x(decoded), Decoder.y(decoded));
+                break;
+            case Decoder.LOAD_RANGE:
+                loadRange(Decoder.x(decoded), Decoder.y(decoded));
+                break;
+            case Decoder.LD_I_LONG:
+                ldILong();
+                break;
+            case Decoder.PLANE:
+                plane(Decoder.x(decoded));
+                break;
+            case Decoder.AUDIO:
+                audio();
+                break;
+            case Decoder.PITCH:
+                pitch(Decoder.x(decoded));
+                break;
+            default:
+                unknown(decoded & 0xFFFF);
+        }
+    }
+
+    // 00E0 - CLS; Clear display
+    void cls() {
+        clearScreen = true;
+        for (int ii = 0; ii < planes.length; ii++) {
+            if ((planeMask & 1 << ii) != 0) {
+                Arrays.fill(planes[ii], 0);
             }
+        }
+        dirtyRows = allRows();
+        rehashDisplay();
+    }
 
-            case 0x7000: { // 7xkk - ADD Vx, byte; Add value kk to value of register Vx, store result in Vx
-                int x = (instruction & 0x0F00) >> 8;
-                V[x] += (byte) instruction & 0x00FF;
-                break;
+    // 00EE - RET; Return from subroutine
+    void ret() {
+        sp--;
+        pc = stack[sp];
+    }
+
+    // 1nnn - JP addr; Jump to location nnn
+    void jp(int nnn) {
+        // The program counter already points past this instruction.
+        if (nnn < pc) {
+            backwardJump = true;
+        }
+        pc = (char) nnn;
+    }
+
+    // 2nnn - CALL addr; Call subroutine at nnn
+    void call(int nnn) {
+        stack[sp] = pc;
+        sp++;
+        pc = (char) nnn;
+    }
+
+    // 3xkk - SE Vx, byte; Skip next instruction if Vx = kk
+    void seByte(int x, int kk) {
+        if ((V[x] & 0xFF) == kk) {
+            skipNext();
+        }
+    }
+
+    // 4xkk - SNE Vx, byte; Skip next instruction if Vx != kk
+    void sneByte(int x, int kk) {
+        if ((V[x] & 0xFF) != kk) {
+            skipNext();
+        }
+    }
+
+    // 5xy0 - SE Vx, Vy; Skip next instruction if Vx = Vy
+    void seReg(int x, int y) {
+        if (V[x] == V[y]) {
+            skipNext();
+        }
+    }
+
+    // 6xkk - LD Vx, byte; Put value kk into register Vx
+    void ldByte(int x, int kk) {
+        V[x] = (byte) kk;
+    }
+
+    // 7xkk - ADD Vx, byte; Add value kk to value of register Vx, store result in Vx
+    void addByte(int x, int kk) {
+        V[x] += (byte) kk;
+    }
+
+    // 8xy0 - LD Vx, Vy; Set Vx = Vy
+    void ldReg(int x, int y) {
+        V[x] = V[y];
+    }
+
+    // 8xy1 - OR Vx, Vy; Set Vx OR Vy
+    void or(int x, int y) {
+        V[x] |= V[y];
+    }
+
+    // 8xy2 - AND Vx, Vy; Set Vx AND Vy
+    void and(int x, int y) {
+        V[x] &= V[y];
+    }
+
+    // 8xy3 - XOR Vx, Vy; Set Vx XOR Vy
+    void xor(int x, int y) {
+        V[x] ^= V[y];
+    }
+
+    // 8xy4 - ADD Vx, Vy; Set Vx += Vy, set VF = carry
+    void addReg(int x, int y) {
+        int sum = (V[x] & 0xFF) + (V[y] & 0xFF);
+        V[x] = (byte) sum;
+        V[0xF] = (byte) (sum > 0xFF ? 1 : 0);
+    }
+
+    // 8xy5 - SUB Vx, Vy; Set Vx -= Vy, set VF = !carry
+    void sub(int x, int y) {
+        int notBorrow = (V[x] & 0xFF) > (V[y] & 0xFF) ? 1 : 0;
+        V[x] -= V[y];
+        V[0xF] = (byte) notBorrow;
+    }
+
+    // 8xy6 - SHR Vx {, Vy}; Set Vx = Vx SHR 1
+    void shr(int x) {
+        int leastSignificantBit = V[x] & 0x1;
+        V[x] = (byte) ((V[x] & 0xFF) >> 1); // Divide by 2
+        V[0xF] = (byte) leastSignificantBit;
+    }
+
+    // 8xy7 - SUBN Vx, Vy; Set Vx = Vy - Vx, set VF = !carry
+    void subn(int x, int y) {
+        int notBorrow = (V[y] & 0xFF) > (V[x] & 0xFF) ? 1 : 0;
+        V[x] = (byte) (V[y] - V[x]);
+        V[0xF] = (byte) notBorrow;
+    }
+
+    // 8xyE - SHL Vx {, Vy}; Set Vx = Vx SHL 1
+    void shl(int x) {
+        int mostSignificantBit = (V[x] & 0x80) >> 7;
+        V[x] = (byte) (V[x] << 1); // Multiply by 2
+        V[0xF] = (byte) mostSignificantBit;
+    }
+
+    // 9xy0 - SNE Vx, Vy; Skip next instruction if Vx != Vy
+    void sneReg(int x, int y) {
+        if (V[x] != V[y]) {
+            skipNext();
+        }
+    }
+
+    // Annn - LD I, addr; Set I = nnn
+    void ldI(int nnn) {
+        I = (char) nnn;
+    }
+
+    // Bnnn - JP V0, addr; Jump to location nnn + V0
+    void jpV0(int nnn) {
+        pc = (char) ((nnn + (V[0] & 0xFF)) & (memory.length - 1));
+    }
+
+    // Cxkk - RND Vx, byte; Set Vx = random byte AND kk
+    void rnd(int x, int kk) {
+        long r = randomState;
+        r ^= r >>> 12;
+        r ^= r << 25;
+        r ^= r >>> 27;
+        randomState = r;
+        byte rand = (byte) ((r * 0x2545F4914F6CDD1DL) >>> 56);
+        V[x] = (byte) (rand & kk);
+    }
+
+    // Dxyn - DRW Vx, Vy, nibble; Display n-byte sprite at memory location I at (Vx, Vy), set VF = collision
+    void drw(int vx, int vy, int n) {
+        drawCalls++;
+
+        // The starting position wraps around the screen, the sprite itself is clipped at the edges.
+        int x = (V[vx] & 0xFF) % NATIVE_SCREEN_WIDTH;
+        int y = (V[vy] & 0xFF) % NATIVE_SCREEN_HEIGHT;
+        int rows = Math.min(n, NATIVE_SCREEN_HEIGHT - y);
+
+        long collision = 0;
+        for (int ii = 0; ii < rows; ii++) {
+            // Move the 8 sprite pixels to the leftmost position of the row, then shift them into place.
+            long spriteLine = ((long) (memory[(I + ii) & 0xFFF] & 0xFF) << 56) >>> x;
+            if (stateHashing) {
+                hashDisplayWord(0, y + ii, spriteLine);
             }
+            collision |= display[y + ii] & spriteLine;
+            display[y + ii] ^= spriteLine;
+        }
+        dirtyRows |= ((1L << rows) - 1) << y;
 
-            case 0x8000: {
-                int x = (instruction & 0x0F00) >> 8;
-                int y = (instruction & 0x00F0) >> 4;
+        V[0xF] = (byte) (collision != 0 ? 1 : 0);
+        dirtyGraphics = true;
+    }
 
-                switch (instruction & 0x000F) {
-                    case 0x0: // 8xy0 - LD Vx, Vy; Set Vx = Vy
-                        V[x] = V[y];
-                        break;
+    // Ex9E - SKP Vx; Skip next instruction if key with value Vx is pressed
+    void skp(int x) {
+        if ((keys & 1 << (V[x] & 0xF)) != 0) {
+            skipNext();
+        }
+    }
 
-                    case 0x1: // 8xy1 - OR Vx, Vy; Set Vx OR Vy
-                        V[x] |= V[y];
-                        break;
+    // ExA1 - SKNP Vx; Skip next instruction if key with value Vx is not pressed
+    void sknp(int x) {
+        if ((keys & 1 << (V[x] & 0xF)) == 0) {
+            skipNext();
+        }
+    }
 
-                    case 0x2: // 8xy2 - AND Vx, Vy; Set Vx AND Vy
-                        V[x] &= V[y];
-                        break;
+    // Fx07 - LD Vx, DT; Set Vx = delay timer
+    void ldVxDt(int x) {
+        V[x] = delayTimer;
+    }
 
-                    case 0x3: // 8xy3 - XOR Vx, Vy; Set Vx XOR Vy
-                        V[x] ^= V[y];
-                        break;
+    // Fx0A - LD Vx, K; Wait for key, store value of key in Vx
+    void ldVxK(int x) {
+        // The CPU halts until a key gets released, like on the COSMAC VIP; see setInput.
+        keyWaitRegister = x;
+    }
 
-                    case 0x4: // 8xy4 - ADD Vx, Vy; Set Vx += Vy, set VF = carry
-                        // TODO: I can't just add these together (signed <-> unsigned), can I?
-                        V[x] += V[y];
-                        V[0xF] = (byte) (((int) V[x] + (int) V[y]) > 0xFF ? 1 : 0);
-                        break;
+    // Fx15 - LD DT, Vx; Set delay timer = Vx
+    void ldDtVx(int x) {
+        delayTimer = V[x];
+    }
 
-                    case 0x5: // 8xy5 - SUB Vx, Vy; Set Vx -= Vy, set VF = !carry
-                        V[0xF] = (byte) (V[x] > V[y] ? 1 : 0);
-                        V[x] -= V[y];
-                        break;
+    // Fx18 - LD ST, Vx; Set sound timer = Vx
+    void ldStVx(int x) {
+        soundTimer = V[x];
+    }
 
-                    case 0x6: // 8xy6 - SHR Vx {, Vy}; Set Vx = Vx SHR 1
-                        V[0xF] = (byte) (V[x] & 0x1);
-                        V[x] = (byte) (V[x] >> 1); // Divide by 2
-                        break;
+    // Fx1E - ADD I, Vx; Set I += Vx.
+    void addI(int x) {
+        I += V[x] & 0xFF;
+    }
 
-                    case 0x7: // 8xy7 - SUBN Vx, Vy; Set Vx = Vy - Vx, set VF = !carry
-                        V[0xF] = (byte) (V[y] > V[x] ? 1 : 0);
-                        V[x] = (byte) (V[y] - V[x]);
-                        break;
+    // Fx29 - LD F, Vx; Set I = sprite location for digit Vx.
+    void ldF(int x) {
+        I = (char) (5 * (V[x] & 0xF));
+    }
 
-                    case 0xE: // 8xyE - SHL Vx {, Vy}; Set Vx = Vx SHL 1
-                        V[0xF] = (byte) ((V[x] & 0x80) >> 7);
-                        V[x] = (byte) (V[x] << 1); // Multiply by 2
-                        break;
+    // Fx33 - LD B, Vx; Store hundreds/tens/ones of decimal value of Vx in I, I+1 and I+2.
+    void ldB(int x) {
+        int value = V[x] & 0xFF;
+        int addressMask = memory.length - 1;
+        writeMemory(I & addressMask, value / 100);
+        writeMemory((I + 1) & addressMask, (value % 100) / 10);
+        writeMemory((I + 2) & addressMask, value % 10);
+    }
 
-                    default:
-                        System.err.println(String.format("Unknown instruction %04x", instruction));
-                }
+    // Fx55 - LD [I], Vx; Store registers V0 to Vx in memory starting at location I.
+    void ldIVx(int x) {
+        int addressMask = memory.length - 1;
+        for (int ii = 0; ii <= x; ii++) {
+            writeMemory((I + ii) & addressMask, V[ii]);
+        }
+    }
 
-                break;
+    // Fx65 - LD Vx, [I]; Read registers V0 to Vx from memory starting at location I.
+    void ldVxI(int x) {
+        int addressMask = memory.length - 1;
+        for (int ii = 0; ii <= x; ii++) {
+            V[ii] = memory[(I + ii) & addressMask];
+        }
+    }
+
+    // 00Cn - SCD n; Scroll the selected planes down by n rows
+    void scd(int n) {
+        int shift = n * rowWords;
+        int used = height * rowWords;
+        for (int ii = 0; ii < planes.length; ii++) {
+            if ((planeMask & 1 << ii) != 0) {
+                System.arraycopy(planes[ii], 0, planes[ii], shift, used - shift);
+                Arrays.fill(planes[ii], 0, shift, 0);
+            }
+        }
+        scrolled();
+    }
+
+    // 00Dn - SCU n; Scroll the selected planes up by n rows
+    void scu(int n) {
+        int shift = n * rowWords;
+        int used = height * rowWords;
+        for (int ii = 0; ii < planes.length; ii++) {
+            if ((planeMask & 1 << ii) != 0) {
+                System.arraycopy(planes[ii], shift, planes[ii], 0, used - shift);
+                Arrays.fill(planes[ii], used - shift, used, 0);
             }
+        }
+        scrolled();
+    }
 
-            case 0x9000: { // 9xy0 - SNE Vx, Vy; Skip next instruction if Vx != Vy
-                int x = (instruction & 0x0F00) >> 8;
-                int y = (instruction & 0x00F0) >> 4;
-                if (V[x] != V[y]) {
-                    pc += INSTRUCTION_SIZE;
+    // 00FB - SCR; Scroll the selected planes right by 4 pixels
+    void scr() {
+        int used = height * rowWords;
+        for (int ii = 0; ii < planes.length; ii++) {
+            if ((planeMask & 1 << ii) == 0) {
+                continue;
+            }
+            long[] plane = planes[ii];
+            for (int row = 0; row < used; row += rowWords) {
+                if (rowWords == 2) {
+                    plane[row + 1] = plane[row + 1] >>> 4 | plane[row] << 60;
                 }
-                break;
+                plane[row] >>>= 4;
             }
+        }
+        scrolled();
+    }
 
-            case 0xA000: // Annn - LD I, addr; Set I = nnn
-                I = (char) (instruction & 0x0FFF);
-                break;
+    // 00FC - SCL; Scroll the selected planes left by 4 pixels
+    void scl() {
+        int used = height * rowWords;
+        for (int ii = 0; ii < planes.length; ii++) {
+            if ((planeMask & 1 << ii) == 0) {
+                continue;
+            }
+            long[] plane = planes[ii];
+            for (int row = 0; row < used; row += rowWords) {
+                if (rowWords == 2) {
+                    plane[row] = plane[row] << 4 | plane[row + 1] >>> 60;
+                    plane[row + 1] <<= 4;
+                } else {
+                    plane[row] <<= 4;
+                }
+            }
+        }
+        scrolled();
+    }
 
-            case 0xB000: // Bnnn - JP V0, addr; Jump to location nnn + V0
-                pc = (char) (instruction & 0x0FFF + V[0]);
-                break;
+    private void scrolled() {
+        dirtyRows = allRows();
+        dirtyGraphics = true;
+        rehashDisplay();
+    }
 
-            case 0xC000: { // Cxkk - RND Vx, byte; Set Vx = random byte AND kk
-                int x = (instruction & 0x0F00) >> 8;
-                int kk = instruction & 0x00FF;
-                byte rand = (byte) Math.floor(Math.random() * 256);
-                V[x] = (byte) (rand & kk);
-                break;
-            }
+    // 00FD - EXIT; Stop the program, which from then on keeps executing this very instruction
+    void exit() {
+        pc -= INSTRUCTION_SIZE;
+    }
 
-            case 0xD000: { // Dxyn - DRW Vx, Vy, nibble; Display n-byte sprite at memory location I at (Vx, Vy), set VF = collision
-                int x = V[(instruction & 0x0F00) >> 8];
-                int y = V[(instruction & 0x00F0) >> 4];
-                int n = instruction & 0xF;
-
-                for (int ii = 0; ii < n; ii++) {
-                    byte singleSpriteLine = memory[I + ii];
-
-                    for (int jj = 0; jj < 8; jj++) {
-                        int pixel = singleSpriteLine & (0x80 >> jj);
-                        if (pixel > 0) {
-                            int displayPointer = x + jj + (y + ii) * NATIVE_SCREEN_WIDTH;
-                            V[0xF] = display[displayPointer] == 1 ? (byte) 1 : 0;
-                            display[displayPointer] ^= 1;
-                        }
-                    }
-                }
+    // 00FE - LOW; Switch to 64x32 pixels and clear the display
+    void low() {
+        setResolution(NATIVE_SCREEN_WIDTH, NATIVE_SCREEN_HEIGHT);
+    }
 
-                dirtyGraphics = true;
-                break;
+    // 00FF - HIGH; Switch to 128x64 pixels and clear the display
+    void high() {
+        setResolution(mode.getMaxWidth(), mode.getMaxHeight());
+    }
+
+    private void setResolution(int width, int height) {
+        this.width = width;
+        this.height = height;
+        rowWords = width / 64;
+        for (long[] plane : planes) {
+            Arrays.fill(plane, 0);
+        }
+        clearScreen = true;
+        dirtyRows = allRows();
+        rehashDisplay();
+    }
+
+    // Dxyn - DRW Vx, Vy, nibble; Like Dxyn, but draws a 16x16 sprite for n = 0 and one sprite per selected plane.
+    // XO-CHIP wraps sprites around the edges, SUPER-CHIP clips them.
+    void drwExtended(int vx, int vy, int n) {
+        drawCalls++;
+
+        boolean wrap = mode == Chip8Mode.XO_CHIP;
+        int x = (V[vx] & 0xFF) & (width - 1);
+        int y = (V[vy] & 0xFF) & (height - 1);
+        int spriteBytes = n == 0 ? 2 : 1;
+        int rows = n == 0 ? 16 : n;
+
+        // A sprite covers at most two words of a row: the one holding x and, unless it's aligned, the next one.
+        int word = x >> 6;
+        int shift = x & 63;
+        int nextWord = word + 1 < rowWords ? word + 1 : wrap ? 0 : -1;
+        int addressMask = memory.length - 1;
+
+        // Every selected plane takes its own sprite, one after the other in memory.
+        int address = I;
+        long collision = 0;
+        long dirty = 0;
+        for (int ii = 0; ii < planes.length; ii++) {
+            if ((planeMask & 1 << ii) == 0) {
+                continue;
             }
 
-            case 0xE000:
-                switch (instruction & 0x00FF) {
-                    case 0x9E: { // Ex9E - SKP Vx; Skip next instruction if key with value Vx is pressed
-                        int x = (instruction & 0x0F00) >> 8;
-                        if (input[V[x]]) {
-                            pc += INSTRUCTION_SIZE;
-                        }
+            long[] plane = planes[ii];
+            for (int jj = 0; jj < rows; jj++) {
+                int row = y + jj;
+                if (row >= height) {
+                    if (!wrap) {
                         break;
                     }
+                    row -= height;
+                }
 
-                    case 0xA1: { // ExA1 - SKNP Vx; Skip next instruction if key with value Vx is not pressed
-                        int x = (instruction & 0x0F00) >> 8;
-                        if (!input[V[x]]) {
-                            pc += INSTRUCTION_SIZE;
-                        }
-                        break;
-                    }
+                int spriteAddress = address + jj * spriteBytes;
+                long spriteLine = memory[spriteAddress & addressMask] & 0xFF;
+                if (spriteBytes == 2) {
+                    spriteLine = spriteLine << 8 | (memory[(spriteAddress + 1) & addressMask] & 0xFF);
+                }
+                spriteLine <<= 64 - 8 * spriteBytes;
 
-                    default:
-                        System.err.println(String.format("Unknown instruction %04x", instruction));
+                int index = row * rowWords;
+                long left = spriteLine >>> shift;
+                if (stateHashing) {
+                    hashDisplayWord(ii, index + word, left);
                 }
-                break;
+                collision |= plane[index + word] & left;
+                plane[index + word] ^= left;
+                if (shift != 0 && nextWord >= 0) {
+                    long right = spriteLine << (64 - shift);
+                    if (stateHashing) {
+                        hashDisplayWord(ii, index + nextWord, right);
+                    }
+                    collision |= plane[index + nextWord] & right;
+                    plane[index + nextWord] ^= right;
+                }
+                dirty |= 1L << row;
+            }
+            address += rows * spriteBytes;
+        }
+        dirtyRows |= dirty;
 
-            case 0xF000: {
-                int x = (instruction & 0x0F00) >> 8;
-                switch (instruction & 0x00FF) {
-                    case 0x7: // Fx07 - LD Vx, DT; Set Vx = delay timer
-                        V[x] = delayTimer;
-                        break;
+        V[0xF] = (byte) (collision != 0 ? 1 : 0);
+        dirtyGraphics = true;
+    }
 
-                    case 0xA: // Fx0A - LD Vx, K; Wait for key, store value of key in Vx
-                        for (int ii = 0; ii < input.length; ii++) {
-                            if (input[ii]) {
-                                V[x] = (byte) ii;
-                                break;
-                            }
-                        }
-                        break;
+    // Fx30 - LD HF, Vx; Set I = large sprite location for digit Vx.
+    void ldHf(int x) {
+        I = (char) (BIG_FONT_START + 10 * (V[x] & 0xF));
+    }
 
-                    case 0x15: // Fx15 - LD DT, Vx; Set delay timer = Vx
-                        delayTimer = V[x];
-                        break;
+    // Fx75 - LD R, Vx; Store registers V0 to Vx in the flag registers.
+    void ldRVx(int x) {
+        System.arraycopy(V, 0, flags, 0, x + 1);
+    }
 
-                    case 0x18: // Fx18 - LD ST, Vx; Set sound timer = Vx
-                        soundTimer = V[x];
-                        break;
+    // Fx85 - LD Vx, R; Read registers V0 to Vx from the flag registers.
+    void ldVxR(int x) {
+        System.arraycopy(flags, 0, V, 0, x + 1);
+    }
 
-                    case 0x1E: // Fx1E - ADD I, Vx; Set I += Vx.
-                        I += V[x];
-                        break;
+    // 5xy2 - SAVE Vx - Vy; Store registers Vx to Vy in memory starting at location I, in either order. I is unchanged.
+    void saveRange(int x, int y) {
+        int step = x <= y ? 1 : -1;
+        int addressMask = memory.length - 1;
+        for (int ii = 0, register = x; ii <= Math.abs(y - x); ii++, register += step) {
+            writeMemory((I + ii) & addressMask, V[register]);
+        }
+    }
 
-                    case 0x29: // Fx29 - LD F, Vx; Set I = sprite location for digit Vx.
-                        I = (char) (5 * V[x]);
-                        break;
+    // 5xy3 - LOAD Vx - Vy; Read registers Vx to Vy from memory starting at location I, in either order. I is unchanged.
+    void loadRange(int x, int y) {
+        int step = x <= y ? 1 : -1;
+        int addressMask = memory.length - 1;
+        for (int ii = 0, register = x; ii <= Math.abs(y - x); ii++, register += step) {
+            V[register] = memory[(I + ii) & addressMask];
+        }
+    }
 
-                    case 0x33: // Fx33 - LD B, Vx; Store hundreds/tens/ones of decimal value of Vx in I, I+1 and I+2.
-                        memory[I] = (byte) ((V[x] & 0xFF) / 100);
-                        memory[I + 1] = (byte) (((V[x] & 0xFF) % 100) / 10);
-                        memory[I + 2] = (byte) (((V[x] & 0xFF) % 100) % 10);
-                        break;
+    // F000 nnnn - LD I, long; Set I = nnnn, the 16-bit address in the following two bytes.
+    void ldILong() {
+        I = (char) fetch();
+        pc += INSTRUCTION_SIZE;
+    }
 
-                    case 0x55: // Fx55 - LD [I], Vx; Store registers V0 to Vx in memory starting at location I.
-                        for (int ii = 0; ii <= x; ii++) {
-                            memory[I + ii] = V[ii];
-                        }
-                        break;
+    // Fn01 - PLANE n; Select the bit planes for drawing, scrolling and clearing.
+    void plane(int n) {
+        planeMask = n & ((1 << planes.length) - 1);
+    }
 
-                    case 0x65: // Fx55 - LD [I], Vx; Read registers V0 to Vx from memory starting at location I.
-                        for (int ii = 0; ii <= x; ii++) {
-                            V[ii] = memory[I + ii];
-                        }
-                        break;
-                }
-                break;
-            }
+    // F002 - AUDIO; Load the 16-byte audio pattern from memory starting at location I.
+    void audio() {
+        for (int ii = 0; ii < AUDIO_PATTERN_SIZE; ii++) {
+            audioPattern[ii] = memory[(I + ii) & (memory.length - 1)];
+        }
+    }
 
-            default:
-                System.err.println(String.format("Unknown instruction %04x", instruction));
+    // Fx3A - PITCH Vx; Set the playback rate of the audio pattern.
+    void pitch(int x) {
+        pitch = V[x] & 0xFF;
+    }
+
+    /**
+     * Skips the instruction at the program counter. XO-CHIP's F000 nnnn is the only one taking up four bytes.
+     */
+    private void skipNext() {
+        if (mode == Chip8Mode.XO_CHIP && fetch() == 0xF000) {
+            pc += 2 * INSTRUCTION_SIZE;
+        } else {
+            pc += INSTRUCTION_SIZE;
+        }
+    }
+
+    private long allRows() {
+        return -1L >>> (64 - height);
+    }
+
+    void unknown(int instruction) {
+        unknownInstructions++;
+
+        // Programs running into data tend to hit the same instructions over and over, so each is reported once.
+        int bit = instruction & 0xFFFF;
+        if (reportedUnknown == null) {
+            reportedUnknown = new long[0x10000 / 64];
+        }
+        if ((reportedUnknown[bit >> 6] & 1L << bit) == 0) {
+            reportedUnknown[bit >> 6] |= 1L << bit;
+            System.err.println(String.format("Unknown instruction %04x", instruction));
+        }
+    }
+
+    private void invalidateCode() {
+        // The interpreter never looks at the decode cache, so it only gets cleared once another engine takes over.
+        if (engine != ExecutionEngine.INTERPRETER) {
+            Arrays.fill(decodeCache, 0);
+        }
+        if (blockCache != null) {
+            blockCache.clear();
+        }
+    }
+
+    private void writeMemory(int address, int value) {
+        if (stateHashing) {
+            memoryHash ^= hashByte(address, memory[address]) ^ hashByte(address, value);
+        }
+        memory[address] = (byte) value;
+
+        // Both the instruction starting at this address and the one starting a byte earlier contain the written byte.
+        decodeCache[address] = 0;
+        if (address > 0) {
+            decodeCache[address - 1] = 0;
+        }
+        if (blockCache != null) {
+            blockCache.invalidate(address);
         }
     }
 
     private void updateTimers() {
-        if (delayTimer > 0) {
+        frames++;
+
+        // The timers are unsigned, so compare against zero instead of relying on the sign of the byte.
+        if (delayTimer != 0) {
             delayTimer--;
         }
-        if (soundTimer > 0) {
+        if (soundTimer != 0) {
             soundTimer--;
-            if (soundTimer > 0) {
-                makeBeep = true;
-            }
         }
+        soundActive = soundTimer != 0;
     }
 
     private void loadFontSet() {
@@ -355,35 +1146,483 @@ public class Chip8Emulator {
         for (int ii = 0; ii < FONT_SET.length; ii++) {
             memory[ii] = (byte) FONT_SET[ii];
         }
+        if (mode != Chip8Mode.CHIP8) {
+            for (int ii = 0; ii < BIG_FONT_SET.length; ii++) {
+                memory[BIG_FONT_START + ii] = (byte) BIG_FONT_SET[ii];
+            }
+        }
+    }
+
+    /**
+     * @return the size of a save state of an emulator running in the given mode
+     */
+    public static int stateSize(Chip8Mode mode) {
+        int size = 4 + 2 + 1 + mode.getMemorySize() + REGISTER_COUNT + 2 + 2 + STACK_SIZE * 2 + 4 + 2 + 8;
+        if (mode == Chip8Mode.CHIP8) {
+            return size + NATIVE_SCREEN_HEIGHT * 8;
+        }
+        return size + 1 + 1 + FLAG_COUNT + AUDIO_PATTERN_SIZE + 1
+                + mode.getPlaneCount() * mode.getMaxHeight() * (mode.getMaxWidth() / 64) * 8;
+    }
+
+    public int getStateSize() {
+        return stateSize(mode);
+    }
+
+    /**
+     * Writes the complete machine state at the buffer's position, taking up exactly {@link #getStateSize()} bytes.
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(STATE_MAGIC);
+        buffer.putShort(STATE_VERSION);
+        buffer.put((byte) mode.ordinal());
+        buffer.put(memory);
+        buffer.put(V);
+        buffer.putChar(I);
+        buffer.putChar(pc);
+        for (int ii = 0; ii < STACK_SIZE; ii++) {
+            buffer.putChar(stack[ii]);
+        }
+        buffer.put(sp);
+        buffer.put(delayTimer);
+        buffer.put(soundTimer);
+        buffer.put((byte) keyWaitRegister);
+        buffer.putShort((short) keys);
+        buffer.putLong(randomState);
+
+        if (mode != Chip8Mode.CHIP8) {
+            buffer.put((byte) (width == NATIVE_SCREEN_WIDTH ? 0 : 1));
+            buffer.put((byte) planeMask);
+            buffer.put(flags);
+            buffer.put(audioPattern);
+            buffer.put((byte) pitch);
+        }
+        for (long[] plane : planes) {
+            for (int ii = 0; ii < plane.length; ii++) {
+                buffer.putLong(plane[ii]);
+            }
+        }
+    }
+
+    /**
+     * Restores a machine state written by {@link #saveState(ByteBuffer)} from the buffer's position.
+     *
+     * @throws IllegalArgumentException if the buffer doesn't hold a save state of this version and mode
+     */
+    public void loadState(ByteBuffer buffer) {
+        int magic = buffer.getInt();
+        short version = buffer.getShort();
+        if (magic != STATE_MAGIC || version != STATE_VERSION) {
+            throw new IllegalArgumentException(String.format("Unsupported save state (magic %08x, version %d)", magic, version));
+        }
+        int stateMode = buffer.get();
+        if (stateMode != mode.ordinal()) {
+            throw new IllegalArgumentException(String.format("Save state of another mode (%d instead of %d)", stateMode, mode.ordinal()));
+        }
+
+        buffer.get(memory);
+        buffer.get(V);
+        I = buffer.getChar();
+        pc = buffer.getChar();
+        for (int ii = 0; ii < STACK_SIZE; ii++) {
+            stack[ii] = buffer.getChar();
+        }
+        sp = buffer.get();
+        delayTimer = buffer.get();
+        soundTimer = buffer.get();
+        soundActive = soundTimer != 0;
+        keyWaitRegister = buffer.get();
+        keys = buffer.getShort() & 0xFFFF;
+        randomState = buffer.getLong();
+
+        if (mode != Chip8Mode.CHIP8) {
+            boolean high = buffer.get() != 0;
+            width = high ? mode.getMaxWidth() : NATIVE_SCREEN_WIDTH;
+            height = high ? mode.getMaxHeight() : NATIVE_SCREEN_HEIGHT;
+            rowWords = width / 64;
+            planeMask = buffer.get();
+            buffer.get(flags);
+            buffer.get(audioPattern);
+            pitch = buffer.get() & 0xFF;
+        }
+        for (long[] plane : planes) {
+            for (int ii = 0; ii < plane.length; ii++) {
+                plane[ii] = buffer.getLong();
+            }
+        }
+
+        // The whole memory may have changed, as well as every pixel on the screen.
+        invalidateCode();
+        dirtyRows = allRows();
+        dirtyGraphics = true;
+        rehashMemory();
+        rehashDisplay();
     }
 
     public void loadProgram(byte[] program) {
+        checkProgramLength(program.length);
         // Programs are loaded at memory location 0x200.
-        for (int ii = 0; ii < program.length; ii++) {
-            memory[ii + 0x200] = program[ii];
+        System.arraycopy(program, 0, memory, PROGRAM_START, program.length);
+        invalidateCode();
+        rehashMemory();
+    }
+
+    /**
+     * Copies a program straight out of a buffer, e.g. a memory-mapped ROM pack, without changing its position.
+     */
+    public void loadProgram(ByteBuffer source, int offset, int length) {
+        checkProgramLength(length);
+        source.get(offset, memory, PROGRAM_START, length);
+        invalidateCode();
+        rehashMemory();
+    }
+
+    private void checkProgramLength(int length) {
+        if (length > mode.getMaxProgramSize()) {
+            throw new IllegalArgumentException(String.format("A program of %d bytes doesn't fit in memory", length));
         }
     }
 
-    public byte[] getDisplay() {
+    /**
+     * @return one long per row, where the most significant bit is the leftmost pixel; at a width of 128 pixels every
+     *         row takes two longs, left half first
+     */
+    public long[] getDisplay() {
         return display;
     }
 
+    /**
+     * @return a bit plane laid out like {@link #getDisplay()}, which is plane 0
+     */
+    public long[] getPlane(int plane) {
+        return planes[plane];
+    }
+
+    public Chip8Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the current width of the display in pixels, either 64 or 128
+     */
+    public int getDisplayWidth() {
+        return width;
+    }
+
+    /**
+     * @return the current height of the display in pixels, either 32 or 64
+     */
+    public int getDisplayHeight() {
+        return height;
+    }
+
+    /**
+     * @return the planes Dxyn, scrolling and clearing currently work on, one bit per plane
+     */
+    int getPlaneMask() {
+        return planeMask;
+    }
+
+    /**
+     * @return the rate XO-CHIP's audio pattern plays at, as set by Fx3A
+     */
+    public int getPitch() {
+        return pitch;
+    }
+
+    /**
+     * Copies XO-CHIP's 16-byte audio pattern, as loaded by F002, into the array.
+     */
+    public void getAudioPattern(byte[] pattern) {
+        System.arraycopy(audioPattern, 0, pattern, 0, AUDIO_PATTERN_SIZE);
+    }
+
+    /**
+     * @return one bit per row that changed since the last call to {@link #takeDirtyRows()}, without resetting them
+     */
+    public long getDirtyRows() {
+        return dirtyRows;
+    }
+
+    /**
+     * @return one bit per row that changed since the previous call, with the top row in the least significant bit
+     */
+    public long takeDirtyRows() {
+        long rows = dirtyRows;
+        dirtyRows = 0;
+        return rows;
+    }
+
+    /**
+     * Copies the amount of executed instructions per opcode family, i.e. per value of the upper nibble, into the array.
+     * The counters keep going up across {@link #init()} and are meant to be read while the emulator keeps running.
+     */
+    public void getOpcodeCounts(long[] counts) {
+        System.arraycopy(opcodeCounts, 0, counts, 0, opcodeCounts.length);
+    }
+
+    public long getInstructionCount() {
+        long count = 0;
+        for (long opcodeCount : opcodeCounts) {
+            count += opcodeCount;
+        }
+        return count;
+    }
+
+    public long getDrawCalls() {
+        return drawCalls;
+    }
+
+    public long getUnknownInstructions() {
+        return unknownInstructions;
+    }
+
+    /**
+     * @return the amount of 60 hertz timer ticks so far
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public int getPc() {
+        return pc;
+    }
+
+    public int getI() {
+        return I;
+    }
+
+    /**
+     * @return the value of Vx, from 0 to 255
+     */
+    public int getRegister(int x) {
+        return V[x] & 0xFF;
+    }
+
+    /**
+     * @return the amount of instructions of idle loops which were accounted for without executing them
+     */
+    public long getIdleInstructions() {
+        return idleInstructions;
+    }
+
+    /**
+     * @param idleLoopDetection false to always execute loops waiting for the delay timer or a key, e.g. to measure
+     *                          the interpreter itself
+     */
+    public void setIdleLoopDetection(boolean idleLoopDetection) {
+        this.idleLoopDetection = idleLoopDetection;
+    }
+
+    /**
+     * @return whether the tone should be playing, as of the last 60 hertz timer tick; safe to call from any thread
+     */
+    public boolean isSoundActive() {
+        return soundActive;
+    }
+
+    public boolean isPixelSet(int x, int y) {
+        return (display[y * rowWords + (x >> 6)] << x) < 0;
+    }
+
+    /**
+     * Seeds the random number generator used by Cxkk; the same seed always yields the same sequence of numbers.
+     * Every call to {@link #init()} picks a new seed based on the current time.
+     */
+    public void setSeed(long seed) {
+        // Mixed, so that similar seeds still start far apart
+        long z = mix(seed + 0x9E3779B97F4A7C15L);
+        randomState = z != 0 ? z : 0x9E3779B97F4A7C15L;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Keeps a hash of memory and display up to date on every write from now on, so that {@link #getStateHash()} no
+     * longer has to look at all of them. Costs a little on every write to memory or the display.
+     */
+    public void setStateHashing(boolean stateHashing) {
+        this.stateHashing = stateHashing;
+        // Before the first init() there's nothing to hash yet; init() takes care of it then.
+        if (memory != null) {
+            rehashMemory();
+            rehashDisplay();
+        }
+    }
+
+    /**
+     * @return a 64-bit hash of the complete machine state, i.e. of everything {@link #saveState(ByteBuffer)} writes.
+     *         Equal states always hash the same, so the hash tells which states were reached more than once. With
+     *         state hashing enabled it takes the same, short time regardless of the size of memory and display.
+     */
+    public long getStateHash() {
+        long hash = stateHashing ? memoryHash ^ displayHash : hashMemory() ^ hashDisplay();
+
+        // The registers are few enough to hash as a whole every time, which keeps the instructions writing them fast.
+        hash = mix(hash ^ pack(V, 0));
+        hash = mix(hash ^ pack(V, 8));
+        hash = mix(hash ^ ((long) I | (long) pc << 16 | (long) (sp & 0xFF) << 32 | (long) (delayTimer & 0xFF) << 40
+                | (long) (soundTimer & 0xFF) << 48 | (long) (keyWaitRegister & 0xFF) << 56));
+        for (int ii = 0; ii < STACK_SIZE; ii += 4) {
+            hash = mix(hash ^ ((long) stack[ii] | (long) stack[ii + 1] << 16 | (long) stack[ii + 2] << 32
+                    | (long) stack[ii + 3] << 48));
+        }
+        hash = mix(hash ^ keys);
+        hash = mix(hash ^ randomState);
+
+        if (mode != Chip8Mode.CHIP8) {
+            hash = mix(hash ^ ((width == NATIVE_SCREEN_WIDTH ? 0 : 1) | planeMask << 8 | pitch << 16));
+            hash = mix(hash ^ pack(flags, 0));
+            hash = mix(hash ^ pack(flags, 8));
+            hash = mix(hash ^ pack(audioPattern, 0));
+            hash = mix(hash ^ pack(audioPattern, 8));
+        }
+        return hash;
+    }
+
+    private static long pack(byte[] bytes, int offset) {
+        long packed = 0;
+        for (int ii = offset; ii < offset + 8; ii++) {
+            packed = packed << 8 | (bytes[ii] & 0xFF);
+        }
+        return packed;
+    }
+
+    /*
+    Zobrist-style hashing: every value at every position has a pseudo-random key, and memory and display hash to the
+    XOR of the keys of all their values. A write then only has to XOR out the key of the old value and XOR in the one
+    of the new value. Zeroes have no key, so hashing from scratch only costs anything for the bytes and words in use.
+     */
+    private static long hashByte(int address, int value) {
+        return (value & 0xFF) == 0 ? 0 : mix((long) address << 8 | (value & 0xFF) | 1L << 32);
+    }
+
+    private static long hashWord(int position, long value) {
+        return value == 0 ? 0 : mix(value * 0x9E3779B97F4A7C15L + position * 0xC2B2AE3D27D4EB4FL);
+    }
+
+    private long hashMemory() {
+        long hash = 0;
+        for (int ii = 0; ii < memory.length; ii++) {
+            hash ^= hashByte(ii, memory[ii]);
+        }
+        return hash;
+    }
+
+    private long hashDisplay() {
+        long hash = 0;
+        for (int ii = 0; ii < planes.length; ii++) {
+            for (int jj = 0; jj < planes[ii].length; jj++) {
+                hash ^= hashWord(ii * planes[ii].length + jj, planes[ii][jj]);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Accounts for a word of the display which is about to be XORed with the given pixels.
+     */
+    private void hashDisplayWord(int plane, int index, long pixels) {
+        int position = plane * planes[plane].length + index;
+        displayHash ^= hashWord(position, planes[plane][index]) ^ hashWord(position, planes[plane][index] ^ pixels);
+    }
+
+    private void rehashMemory() {
+        if (stateHashing) {
+            memoryHash = hashMemory();
+        }
+    }
+
+    private void rehashDisplay() {
+        if (stateHashing) {
+            displayHash = hashDisplay();
+        }
+    }
+
     public void setInput(int key, boolean isPressed) {
-        input[key] = isPressed;
+        if (isPressed) {
+            keys |= 1 << key;
+        } else if ((keys & 1 << key) != 0) {
+            keys &= ~(1 << key);
+            // Resuming on the release keeps the program from seeing the key still held right after Fx0A.
+            if (keyWaitRegister != NOT_WAITING) {
+                V[keyWaitRegister] = (byte) key;
+                keyWaitRegister = NOT_WAITING;
+            }
+        }
     }
 
+    /**
+     * @return one bit per key that is currently pressed
+     */
+    public int getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return true if the CPU is halted by Fx0A until a key gets released
+     */
+    public boolean isWaitingForKey() {
+        return keyWaitRegister != NOT_WAITING;
+    }
+
+    /**
+     * @return true if either the delay or the sound timer is still counting down
+     */
+    public boolean areTimersRunning() {
+        return delayTimer != 0 || soundTimer != 0;
+    }
+
+    /**
+     * Prints the current instruction and registers. Called over and over while paused, so the text is put together in
+     * a buffer which is reused rather than formatted anew.
+     */
     public void debug() {
-        System.out.print(String.format("Instruction: %04X\t", instruction & 0xFFFF));
-        System.out.println(String.format("PC: %04X", (int) pc));
-        for (int ii = 0; ii < 16; ii+=4) {
-            System.out.print(String.format("V%x: %02X\t", ii, V[ii] & 0xFF));
-            System.out.print(String.format("V%x: %02X\t", ii + 1, V[ii+1] & 0xFF));
-            System.out.print(String.format("V%x: %02X\t", ii + 2, V[ii+2] & 0xFF));
-            System.out.print(String.format("V%x: %02X\n", ii + 3, V[ii+3] & 0xFF));
-        }
-        System.out.print(String.format("I: %04X\t", (int) I));
-        System.out.print(String.format("SP: %04X\t", (int) sp));
-        System.out.print(String.format("DT: %02X\t", (int) delayTimer));
-        System.out.println(String.format("ST: %02X", (int) soundTimer));
+        if (debugText == null) {
+            debugText = new byte[DEBUG_TEXT_SIZE];
+        }
+        debugLength = 0;
+
+        debugAppend("Instruction: ");
+        debugAppendHex(instruction & 0xFFFF, 4);
+        debugAppend("\tPC: ");
+        debugAppendHex(pc, 4);
+        debugAppend("\n");
+        for (int ii = 0; ii < 16; ii++) {
+            debugAppend("V");
+            debugText[debugLength++] = (byte) Character.forDigit(ii, 16);
+            debugAppend(": ");
+            debugAppendHex(V[ii] & 0xFF, 2);
+            debugAppend(ii % 4 == 3 ? "\n" : "\t");
+        }
+        debugAppend("I: ");
+        debugAppendHex(I, 4);
+        debugAppend("\tSP: ");
+        debugAppendHex(sp, 4);
+        debugAppend("\tDT: ");
+        debugAppendHex(delayTimer & 0xFF, 2);
+        debugAppend("\tST: ");
+        debugAppendHex(soundTimer & 0xFF, 2);
+        debugAppend("\n");
+
+        System.out.write(debugText, 0, debugLength);
+        System.out.flush();
+    }
+
+    private void debugAppend(String text) {
+        for (int ii = 0; ii < text.length(); ii++) {
+            debugText[debugLength++] = (byte) text.charAt(ii);
+        }
+    }
+
+    private void debugAppendHex(int value, int digits) {
+        for (int ii = digits - 1; ii >= 0; ii--) {
+            debugText[debugLength++] = (byte) Character.toUpperCase(Character.forDigit(value >> ii * 4 & 0xF, 16));
+        }
     }
 }
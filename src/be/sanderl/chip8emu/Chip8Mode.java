@@ -0,0 +1,60 @@
+package be.sanderl.chip8emu;
+
+/**
+ * The instruction sets {@link Chip8Emulator} can run. The mode is fixed when constructing an emulator, so programs
+ * written for the original CHIP-8 never pay for the extensions.
+ */
+public enum Chip8Mode {
+
+    /**
+     * The original instruction set: a 64x32 monochrome display and 4 kB of memory.
+     */
+    CHIP8(64, 32, 4096, 1),
+
+    /**
+     * SUPER-CHIP 1.1: adds a 128x64 high resolution mode, scrolling, 16x16 sprites, a large font and 16 flag registers.
+     * Scrolling and drawing follow the modern interpretation, i.e. in pixels of the current resolution.
+     */
+    SUPER_CHIP(128, 64, 4096, 1),
+
+    /**
+     * XO-CHIP: SUPER-CHIP plus 64 kB of memory, a second bit plane, scrolling up, wrapping sprites, loading and storing
+     * register ranges and 16-bit addresses for I.
+     */
+    XO_CHIP(128, 64, 65536, 2);
+
+    private final int maxWidth;
+    private final int maxHeight;
+    private final int memorySize;
+    private final int planeCount;
+
+    Chip8Mode(int maxWidth, int maxHeight, int memorySize, int planeCount) {
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.memorySize = memorySize;
+        this.planeCount = planeCount;
+    }
+
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    public int getMemorySize() {
+        return memorySize;
+    }
+
+    /**
+     * @return how large a program may be, given that programs are loaded at 0x200
+     */
+    public int getMaxProgramSize() {
+        return memorySize - Chip8Emulator.PROGRAM_START;
+    }
+
+    public int getPlaneCount() {
+        return planeCount;
+    }
+}
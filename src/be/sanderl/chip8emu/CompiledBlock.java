@@ -0,0 +1,12 @@
+package be.sanderl.chip8emu;
+
+/**
+ * Implemented by the hidden classes the {@link Recompiler} generates; one class per basic block.
+ */
+interface CompiledBlock {
+
+    /**
+     * Executes every instruction of the block and leaves the program counter at the next instruction to run.
+     */
+    void execute(Chip8Emulator emulator);
+}
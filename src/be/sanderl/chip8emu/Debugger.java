@@ -0,0 +1,345 @@
+package be.sanderl.chip8emu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Breakpoints, watchpoints and conditional breaks for a single emulator, plus pausing and single-stepping.
+ * <p>
+ * As long as nothing is armed, the emulator doesn't even know about the debugger and runs at full speed. Arming the
+ * first breakpoint, watchpoint or condition makes the emulator check every instruction before executing it, on every
+ * engine; disarming the last one restores the fast path. When something triggers, the emulator abandons the rest of
+ * the frame, without ticking the timers, and the debugger pauses.
+ * <p>
+ * Breaks and watchpoints may be changed from any thread; changes take effect at the next frame at the latest.
+ */
+public class Debugger {
+
+    public static final int READ = 1;
+    public static final int WRITE = 2;
+
+    private static final int NO_SKIP = -1;
+
+    private final Chip8Emulator emulator;
+
+    private final boolean[] breakpoints;
+    // READ and/or WRITE per memory address
+    private final byte[] memoryWatches;
+    private volatile int indexWatch;
+    private final List<RegisterCondition> conditions = new ArrayList<>();
+    private int armed;
+
+    // The instruction a break stopped at must be able to run once execution continues from that same address. Only
+    // touched by the thread running the emulator.
+    private int skipPc = NO_SKIP;
+    private volatile String lastBreak;
+    private volatile int breakCount;
+
+    private volatile boolean paused;
+    private volatile boolean stepRequested;
+    private volatile Thread waiter;
+
+    public Debugger(Chip8Emulator emulator) {
+        this.emulator = emulator;
+        breakpoints = new boolean[emulator.getMode().getMemorySize()];
+        memoryWatches = new byte[emulator.getMode().getMemorySize()];
+    }
+
+    public synchronized void addBreakpoint(int address) {
+        if (!breakpoints[address]) {
+            breakpoints[address] = true;
+            arm(1);
+        }
+    }
+
+    public synchronized void removeBreakpoint(int address) {
+        if (breakpoints[address]) {
+            breakpoints[address] = false;
+            arm(-1);
+        }
+    }
+
+    /**
+     * Breaks before any instruction which reads and/or writes memory within [from, to).
+     *
+     * @param access {@link #READ}, {@link #WRITE} or both
+     */
+    public synchronized void addWatchpoint(int from, int to, int access) {
+        for (int address = from; address < to; address++) {
+            if (memoryWatches[address] == 0) {
+                arm(1);
+            }
+            memoryWatches[address] |= access;
+        }
+    }
+
+    public synchronized void removeWatchpoint(int from, int to) {
+        for (int address = from; address < to; address++) {
+            if (memoryWatches[address] != 0) {
+                memoryWatches[address] = 0;
+                arm(-1);
+            }
+        }
+    }
+
+    /**
+     * Breaks before any instruction which reads and/or writes the index register I.
+     *
+     * @param access {@link #READ}, {@link #WRITE}, both, or 0 to stop watching
+     */
+    public synchronized void watchIndex(int access) {
+        arm((access != 0 ? 1 : 0) - (indexWatch != 0 ? 1 : 0));
+        indexWatch = access;
+    }
+
+    /**
+     * Breaks as soon as Vx holds the given value; it only triggers again after Vx held another value in between.
+     */
+    public synchronized void addCondition(int register, int value) {
+        conditions.add(new RegisterCondition(register, value & 0xFF));
+        arm(1);
+    }
+
+    public synchronized void clearConditions() {
+        arm(-conditions.size());
+        conditions.clear();
+    }
+
+    private void arm(int delta) {
+        armed += delta;
+        emulator.setDebugger(armed > 0 ? this : null);
+    }
+
+    /**
+     * Checks the instruction at the program counter right before it executes. Called by the emulator only.
+     *
+     * @return true if execution has to stop
+     */
+    synchronized boolean shouldBreak() {
+        int pc = emulator.getPc();
+        boolean skip = pc == skipPc;
+        skipPc = NO_SKIP;
+        if (skip) {
+            return false;
+        }
+
+        if (breakpoints[pc]) {
+            return hit(String.format("Breakpoint at %03X", pc));
+        }
+
+        for (int ii = 0; ii < conditions.size(); ii++) {
+            RegisterCondition condition = conditions.get(ii);
+            boolean holds = emulator.getRegister(condition.register) == condition.value;
+            if (holds && !condition.held) {
+                condition.held = true;
+                return hit(String.format("V%X = %02X at %03X", condition.register, condition.value, pc));
+            }
+            condition.held = holds;
+        }
+
+        int instruction = emulator.instructionAt(pc);
+        int indexAccess = indexAccess(instruction);
+        if ((indexAccess & indexWatch) != 0) {
+            if (isLongLoad(instruction)) {
+                // F000 nnnn takes four bytes, the address being the second half.
+                int address = emulator.instructionAt((pc + 2) & (memoryWatches.length - 1));
+                return hit(String.format("Write of I by F000 %04X at %03X", address, pc));
+            }
+            return hit(String.format("%s of I by %04X at %03X", accessName(indexAccess & indexWatch), instruction, pc));
+        }
+
+        int memoryAccess = memoryAccess(instruction);
+        if (memoryAccess != 0) {
+            int start = emulator.getI();
+            int length = memoryAccessLength(instruction);
+            for (int ii = 0; ii < length; ii++) {
+                int address = (start + ii) & (memoryWatches.length - 1);
+                if ((memoryWatches[address] & memoryAccess) != 0) {
+                    return hit(String.format("%s of %03X by %04X at %03X", accessName(memoryAccess), address, instruction, pc));
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean hit(String reason) {
+        lastBreak = reason;
+        breakCount++;
+        skipPc = emulator.getPc();
+        pause();
+        return true;
+    }
+
+    // How an instruction accesses memory at I; only Dxyn, Fx33, Fx55 and Fx65 do, plus 5xy2, 5xy3 and F002 on XO-CHIP.
+    private int memoryAccess(int instruction) {
+        if ((instruction & 0xF000) == 0xD000) {
+            return READ;
+        }
+        if (isRangeTransfer(instruction)) {
+            return (instruction & 0xF) == 0x2 ? WRITE : READ;
+        }
+        if (instruction == 0xF002 && emulator.getMode() == Chip8Mode.XO_CHIP) {
+            return READ;
+        }
+        switch (instruction & 0xF0FF) {
+            case 0xF033:
+            case 0xF055:
+                return WRITE;
+            case 0xF065:
+                return READ;
+            default:
+                return 0;
+        }
+    }
+
+    private int memoryAccessLength(int instruction) {
+        if ((instruction & 0xF000) == 0xD000) {
+            // Dxy0 draws a 16x16 sprite outside of CHIP-8 mode, and every selected plane reads a sprite of its own.
+            int n = instruction & 0xF;
+            int length = n != 0 ? n : emulator.getMode() != Chip8Mode.CHIP8 ? 32 : 0;
+            return length * Integer.bitCount(emulator.getPlaneMask());
+        }
+        if (isRangeTransfer(instruction)) {
+            return Math.abs((instruction >> 4 & 0xF) - (instruction >> 8 & 0xF)) + 1;
+        }
+        if (instruction == 0xF002) {
+            return Chip8Emulator.AUDIO_PATTERN_SIZE;
+        }
+        return (instruction & 0xF0FF) == 0xF033 ? 3 : (instruction >> 8 & 0xF) + 1;
+    }
+
+    private int indexAccess(int instruction) {
+        switch (instruction & 0xF000) {
+            case 0xA000:
+                return WRITE;
+            case 0xD000:
+                return READ;
+            case 0x5000:
+                return isRangeTransfer(instruction) ? READ : 0;
+            case 0xF000:
+                if (emulator.getMode() == Chip8Mode.XO_CHIP) {
+                    if (instruction == 0xF000) {
+                        return WRITE;
+                    }
+                    if (instruction == 0xF002) {
+                        return READ;
+                    }
+                }
+                switch (instruction & 0xFF) {
+                    case 0x1E:
+                        return READ | WRITE;
+                    case 0x29:
+                        return WRITE;
+                    case 0x30:
+                        return emulator.getMode() != Chip8Mode.CHIP8 ? WRITE : 0;
+                    case 0x33:
+                    case 0x55:
+                    case 0x65:
+                        return READ;
+                    default:
+                        return 0;
+                }
+            default:
+                return 0;
+        }
+    }
+
+    // 5xy2 and 5xy3 save and load a range of registers on XO-CHIP.
+    private boolean isRangeTransfer(int instruction) {
+        return (instruction & 0xF00E) == 0x5002 && emulator.getMode() == Chip8Mode.XO_CHIP;
+    }
+
+    private boolean isLongLoad(int instruction) {
+        return instruction == 0xF000 && emulator.getMode() == Chip8Mode.XO_CHIP;
+    }
+
+    private static String accessName(int access) {
+        return (access & WRITE) != 0 ? "Write" : "Read";
+    }
+
+    /**
+     * @return why execution stopped the last time, or null if nothing triggered yet
+     */
+    public String getLastBreak() {
+        return lastBreak;
+    }
+
+    /**
+     * @return how often something triggered so far
+     */
+    public int getBreakCount() {
+        return breakCount;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        paused = false;
+        wakeUp();
+    }
+
+    public void togglePause() {
+        if (paused) {
+            resume();
+        } else {
+            pause();
+        }
+    }
+
+    /**
+     * Lets a paused emulator execute a single instruction.
+     */
+    public void step() {
+        if (paused) {
+            stepRequested = true;
+            wakeUp();
+        }
+    }
+
+    /**
+     * Parks the thread running a paused emulator until either a step is requested or execution resumes.
+     *
+     * @return true if a single instruction is to be executed, false if execution resumed
+     */
+    public boolean awaitStep() {
+        waiter = Thread.currentThread();
+        while (paused && !stepRequested) {
+            LockSupport.park(this);
+        }
+        waiter = null;
+
+        if (stepRequested) {
+            // The step runs the instruction the break stopped at, or the program counter moved on anyway.
+            stepRequested = false;
+            skipPc = NO_SKIP;
+            return true;
+        }
+        return false;
+    }
+
+    private void wakeUp() {
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private static final class RegisterCondition {
+
+        final int register;
+        final int value;
+        boolean held;
+
+        RegisterCondition(int register, int value) {
+            this.register = register;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package be.sanderl.chip8emu;
+
+/**
+ * Turns raw instructions into a decoded form: a handler index in the upper 16 bits and the untouched instruction
+ * (which holds all operands) in the lower 16 bits. Handler indices start at 1, so a decoded instruction is never 0.
+ */
+final class Decoder {
+
+    static final int UNKNOWN = 1;
+    static final int CLS = 2;
+    static final int RET = 3;
+    static final int JP = 4;
+    static final int CALL = 5;
+    static final int SE_BYTE = 6;
+    static final int SNE_BYTE = 7;
+    static final int SE_REG = 8;
+    static final int LD_BYTE = 9;
+    static final int ADD_BYTE = 10;
+    static final int LD_REG = 11;
+    static final int OR = 12;
+    static final int AND = 13;
+    static final int XOR = 14;
+    static final int ADD_REG = 15;
+    static final int SUB = 16;
+    static final int SHR = 17;
+    static final int SUBN = 18;
+    static final int SHL = 19;
+    static final int SNE_REG = 20;
+    static final int LD_I = 21;
+    static final int JP_V0 = 22;
+    static final int RND = 23;
+    static final int DRW = 24;
+    static final int SKP = 25;
+    static final int SKNP = 26;
+    static final int LD_VX_DT = 27;
+    static final int LD_VX_K = 28;
+    static final int LD_DT_VX = 29;
+    static final int LD_ST_VX = 30;
+    static final int ADD_I = 31;
+    static final int LD_F = 32;
+    static final int LD_B = 33;
+    static final int LD_I_VX = 34;
+    static final int LD_VX_I = 35;
+
+    // SUPER-CHIP and XO-CHIP only
+    static final int SCD = 36;
+    static final int SCU = 37;
+    static final int SCR = 38;
+    static final int SCL = 39;
+    static final int EXIT = 40;
+    static final int LOW = 41;
+    static final int HIGH = 42;
+    static final int DRW_EXTENDED = 43;
+    static final int LD_HF = 44;
+    static final int LD_R_VX = 45;
+    static final int LD_VX_R = 46;
+
+    // XO-CHIP only
+    static final int SAVE_RANGE = 47;
+    static final int LOAD_RANGE = 48;
+    static final int LD_I_LONG = 49;
+    static final int PLANE = 50;
+    static final int AUDIO = 51;
+    static final int PITCH = 52;
+
+    private Decoder() {
+    }
+
+    static int decode(int instruction) {
+        return lookupHandler(instruction) << 16 | (instruction & 0xFFFF);
+    }
+
+    /**
+     * Decodes the instruction set of the given mode. Dxyn gets a handler of its own outside of CHIP-8 mode, so that
+     * the original draw routine doesn't have to deal with any of the extensions.
+     */
+    static int decode(int instruction, Chip8Mode mode) {
+        if (mode != Chip8Mode.CHIP8) {
+            int handler = lookupExtendedHandler(instruction, mode == Chip8Mode.XO_CHIP);
+            if (handler != UNKNOWN) {
+                return handler << 16 | (instruction & 0xFFFF);
+            }
+        }
+        return decode(instruction);
+    }
+
+    static int handler(int decoded) {
+        return decoded >>> 16;
+    }
+
+    static int x(int decoded) {
+        return (decoded & 0x0F00) >> 8;
+    }
+
+    static int y(int decoded) {
+        return (decoded & 0x00F0) >> 4;
+    }
+
+    static int kk(int decoded) {
+        return decoded & 0x00FF;
+    }
+
+    static int nnn(int decoded) {
+        return decoded & 0x0FFF;
+    }
+
+    static int n(int decoded) {
+        return decoded & 0x000F;
+    }
+
+    private static int lookupHandler(int instruction) {
+        switch (instruction & 0xF000) {
+            case 0x0000:
+                switch (instruction & 0x00FF) {
+                    case 0xE0:
+                        return CLS;
+                    case 0xEE:
+                        return RET;
+                    default:
+                        return UNKNOWN;
+                }
+
+            case 0x1000:
+                return JP;
+            case 0x2000:
+                return CALL;
+            case 0x3000:
+                return SE_BYTE;
+            case 0x4000:
+                return SNE_BYTE;
+            case 0x5000:
+                return SE_REG;
+            case 0x6000:
+                return LD_BYTE;
+            case 0x7000:
+                return ADD_BYTE;
+
+            case 0x8000:
+                switch (instruction & 0x000F) {
+                    case 0x0:
+                        return LD_REG;
+                    case 0x1:
+                        return OR;
+                    case 0x2:
+                        return AND;
+                    case 0x3:
+                        return XOR;
+                    case 0x4:
+                        return ADD_REG;
+                    case 0x5:
+                        return SUB;
+                    case 0x6:
+                        return SHR;
+                    case 0x7:
+                        return SUBN;
+                    case 0xE:
+                        return SHL;
+                    default:
+                        return UNKNOWN;
+                }
+
+            case 0x9000:
+                return SNE_REG;
+            case 0xA000:
+                return LD_I;
+            case 0xB000:
+                return JP_V0;
+            case 0xC000:
+                return RND;
+            case 0xD000:
+                return DRW;
+
+            case 0xE000:
+                switch (instruction & 0x00FF) {
+                    case 0x9E:
+                        return SKP;
+                    case 0xA1:
+                        return SKNP;
+                    default:
+                        return UNKNOWN;
+                }
+
+            case 0xF000:
+                switch (instruction & 0x00FF) {
+                    case 0x07:
+                        return LD_VX_DT;
+                    case 0x0A:
+                        return LD_VX_K;
+                    case 0x15:
+                        return LD_DT_VX;
+                    case 0x18:
+                        return LD_ST_VX;
+                    case 0x1E:
+                        return ADD_I;
+                    case 0x29:
+                        return LD_F;
+                    case 0x33:
+                        return LD_B;
+                    case 0x55:
+                        return LD_I_VX;
+                    case 0x65:
+                        return LD_VX_I;
+                    default:
+                        return UNKNOWN;
+                }
+
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    private static int lookupExtendedHandler(int instruction, boolean xoChip) {
+        switch (instruction & 0xF000) {
+            case 0x0000:
+                if ((instruction & 0xFFF0) == 0x00C0) {
+                    return SCD;
+                }
+                if ((instruction & 0xFFF0) == 0x00D0 && xoChip) {
+                    return SCU;
+                }
+                switch (instruction & 0xFFFF) {
+                    case 0x00FB:
+                        return SCR;
+                    case 0x00FC:
+                        return SCL;
+                    case 0x00FD:
+                        return EXIT;
+                    case 0x00FE:
+                        return LOW;
+                    case 0x00FF:
+                        return HIGH;
+                    default:
+                        return UNKNOWN;
+                }
+
+            case 0x5000:
+                if (!xoChip) {
+                    return UNKNOWN;
+                }
+                switch (instruction & 0x000F) {
+                    case 0x2:
+                        return SAVE_RANGE;
+                    case 0x3:
+                        return LOAD_RANGE;
+                    default:
+                        return UNKNOWN;
+                }
+
+            case 0xD000:
+                return DRW_EXTENDED;
+
+            case 0xF000:
+                if (xoChip) {
+                    if (instruction == 0xF000) {
+                        return LD_I_LONG;
+                    }
+                    if ((instruction & 0x00FF) == 0x01) {
+                        return PLANE;
+                    }
+                    if (instruction == 0xF002) {
+                        return AUDIO;
+                    }
+                    if ((instruction & 0x00FF) == 0x3A) {
+                        return PITCH;
+                    }
+                }
+                switch (instruction & 0x00FF) {
+                    case 0x30:
+                        return LD_HF;
+                    case 0x75:
+                        return LD_R_VX;
+                    case 0x85:
+                        return LD_VX_R;
+                    default:
+                        return UNKNOWN;
+                }
+
+            default:
+                return UNKNOWN;
+        }
+    }
+}
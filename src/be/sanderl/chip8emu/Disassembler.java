@@ -0,0 +1,133 @@
+package be.sanderl.chip8emu;
+
+/**
+ * Turns instructions into the mnemonics used throughout the emulator's comments, e.g. {@code DRW V0, V1, 5}.
+ */
+public final class Disassembler {
+
+    private Disassembler() {
+    }
+
+    public static String disassemble(int instruction) {
+        return disassemble(instruction, Chip8Mode.CHIP8);
+    }
+
+    /**
+     * @return the instruction as it's understood in the given mode; unknown ones are shown as raw data
+     */
+    public static String disassemble(int instruction, Chip8Mode mode) {
+        int decoded = Decoder.decode(instruction & 0xFFFF, mode);
+        int x = Decoder.x(decoded);
+        int y = Decoder.y(decoded);
+        int kk = Decoder.kk(decoded);
+        int nnn = Decoder.nnn(decoded);
+        int n = Decoder.n(decoded);
+
+        switch (Decoder.handler(decoded)) {
+            case Decoder.CLS:
+                return "CLS";
+            case Decoder.RET:
+                return "RET";
+            case Decoder.JP:
+                return String.format("JP %03X", nnn);
+            case Decoder.CALL:
+                return String.format("CALL %03X", nnn);
+            case Decoder.SE_BYTE:
+                return String.format("SE V%X, %02X", x, kk);
+            case Decoder.SNE_BYTE:
+                return String.format("SNE V%X, %02X", x, kk);
+            case Decoder.SE_REG:
+                return String.format("SE V%X, V%X", x, y);
+            case Decoder.LD_BYTE:
+                return String.format("LD V%X, %02X", x, kk);
+            case Decoder.ADD_BYTE:
+                return String.format("ADD V%X, %02X", x, kk);
+            case Decoder.LD_REG:
+                return String.format("LD V%X, V%X", x, y);
+            case Decoder.OR:
+                return String.format("OR V%X, V%X", x, y);
+            case Decoder.AND:
+                return String.format("AND V%X, V%X", x, y);
+            case Decoder.XOR:
+                return String.format("XOR V%X, V%X", x, y);
+            case Decoder.ADD_REG:
+                return String.format("ADD V%X, V%X", x, y);
+            case Decoder.SUB:
+                return String.format("SUB V%X, V%X", x, y);
+            case Decoder.SHR:
+                return String.format("SHR V%X", x);
+            case Decoder.SUBN:
+                return String.format("SUBN V%X, V%X", x, y);
+            case Decoder.SHL:
+                return String.format("SHL V%X", x);
+            case Decoder.SNE_REG:
+                return String.format("SNE V%X, V%X", x, y);
+            case Decoder.LD_I:
+                return String.format("LD I, %03X", nnn);
+            case Decoder.JP_V0:
+                return String.format("JP V0, %03X", nnn);
+            case Decoder.RND:
+                return String.format("RND V%X, %02X", x, kk);
+            case Decoder.DRW:
+            case Decoder.DRW_EXTENDED:
+                return String.format("DRW V%X, V%X, %X", x, y, n);
+            case Decoder.SKP:
+                return String.format("SKP V%X", x);
+            case Decoder.SKNP:
+                return String.format("SKNP V%X", x);
+            case Decoder.LD_VX_DT:
+                return String.format("LD V%X, DT", x);
+            case Decoder.LD_VX_K:
+                return String.format("LD V%X, K", x);
+            case Decoder.LD_DT_VX:
+                return String.format("LD DT, V%X", x);
+            case Decoder.LD_ST_VX:
+                return String.format("LD ST, V%X", x);
+            case Decoder.ADD_I:
+                return String.format("ADD I, V%X", x);
+            case Decoder.LD_F:
+                return String.format("LD F, V%X", x);
+            case Decoder.LD_B:
+                return String.format("LD B, V%X", x);
+            case Decoder.LD_I_VX:
+                return String.format("LD [I], V%X", x);
+            case Decoder.LD_VX_I:
+                return String.format("LD V%X, [I]", x);
+            case Decoder.SCD:
+                return String.format("SCD %X", n);
+            case Decoder.SCU:
+                return String.format("SCU %X", n);
+            case Decoder.SCR:
+                return "SCR";
+            case Decoder.SCL:
+                return "SCL";
+            case Decoder.EXIT:
+                return "EXIT";
+            case Decoder.LOW:
+                return "LOW";
+            case Decoder.HIGH:
+                return "HIGH";
+            case Decoder.LD_HF:
+                return String.format("LD HF, V%X", x);
+            case Decoder.LD_R_VX:
+                return String.format("LD R, V%X", x);
+            case Decoder.LD_VX_R:
+                return String.format("LD V%X, R", x);
+            case Decoder.SAVE_RANGE:
+                return String.format("SAVE V%X - V%X", x, y);
+            case Decoder.LOAD_RANGE:
+                return String.format("LOAD V%X - V%X", x, y);
+            case Decoder.LD_I_LONG:
+                // The address itself is in the next two bytes, which aren't part of the instruction.
+                return "LD I, long";
+            case Decoder.PLANE:
+                return String.format("PLANE %X", x);
+            case Decoder.AUDIO:
+                return "AUDIO";
+            case Decoder.PITCH:
+                return String.format("PITCH V%X", x);
+            default:
+                return String.format("DW %04X", instruction & 0xFFFF);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package be.sanderl.chip8emu;
+
+/**
+ * The ways in which {@link Chip8Emulator} can execute a program. All of them produce exactly the same results.
+ */
+public enum ExecutionEngine {
+
+    /**
+     * Fetches and decodes every instruction right before executing it.
+     */
+    INTERPRETER,
+
+    /**
+     * Decodes every instruction only once and keeps the decoded form per memory address, until that memory is written.
+     */
+    PREDECODED,
+
+    /**
+     * Translates basic blocks into JVM bytecode, so HotSpot can compile them like any other Java code. Instructions
+     * outside of blocks (e.g. single-stepping) are executed like {@link #PREDECODED} does.
+     */
+    RECOMPILER
+}
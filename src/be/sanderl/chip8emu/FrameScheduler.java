@@ -0,0 +1,139 @@
+package be.sanderl.chip8emu;
+
+import be.sanderl.chip8emu.metrics.EmulatorMetrics;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives an emulator in frames of 1/60th of a second: every frame runs a batch of instructions, ticks the timers
+ * once and then parks the calling thread until the next frame is due.
+ */
+public class FrameScheduler {
+
+    public static final int TIMER_FREQUENCY = 60;
+    public static final int UNLIMITED = 0;
+
+    // In turbo mode there is no pacing at all, so simply run big batches per frame.
+    private static final int TURBO_INSTRUCTIONS_PER_FRAME = 1000;
+    private static final long FRAME_PERIOD_NANOS = 1_000_000_000L / TIMER_FREQUENCY;
+
+    // When the host falls this far behind (e.g. after a GC pause or a suspended laptop), stop trying to catch up.
+    private static final long MAX_LAG_NANOS = 5 * FRAME_PERIOD_NANOS;
+
+    private final Chip8Emulator emulator;
+    private int instructionsPerSecond;
+
+    // Instructions per second are rarely a multiple of 60; the remainder is carried over to the next frames.
+    private int instructionRemainder;
+    private long nextFrameDeadline;
+    private EmulatorMetrics metrics;
+    private Keypad keypad;
+    private boolean paced = true;
+
+    public FrameScheduler(Chip8Emulator emulator, int instructionsPerSecond) {
+        this.emulator = emulator;
+        setInstructionsPerSecond(instructionsPerSecond);
+    }
+
+    /**
+     * @param instructionsPerSecond the CPU speed, or {@link #UNLIMITED} to run as fast as the host allows
+     */
+    public void setInstructionsPerSecond(int instructionsPerSecond) {
+        this.instructionsPerSecond = instructionsPerSecond;
+        instructionRemainder = 0;
+        nextFrameDeadline = System.nanoTime();
+    }
+
+    /**
+     * @param metrics where to record how late every frame starts, or null to not record it
+     */
+    public void setMetrics(EmulatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param keypad whose events get applied at the start of every frame, or null if input is set directly
+     */
+    public void setKeypad(Keypad keypad) {
+        this.keypad = keypad;
+    }
+
+    /**
+     * @param paced false to run frames back to back, while keeping the amount of instructions per frame the same
+     */
+    public void setPaced(boolean paced) {
+        this.paced = paced;
+        nextFrameDeadline = System.nanoTime();
+    }
+
+    public int getInstructionsPerSecond() {
+        return instructionsPerSecond;
+    }
+
+    public boolean isTurbo() {
+        return instructionsPerSecond == UNLIMITED;
+    }
+
+    /**
+     * Runs a single frame and, unless running in turbo mode, waits until the next frame is due.
+     * <p>
+     * While the program waits for a key and there are no timers left to tick, nothing can change until input
+     * arrives, so the thread parks until then instead of running empty frames.
+     */
+    public void runFrame() {
+        if (keypad != null) {
+            if (emulator.isWaitingForKey() && !emulator.areTimersRunning() && !keypad.hasPendingEvents()) {
+                keypad.awaitEvent();
+                nextFrameDeadline = System.nanoTime();
+                return;
+            }
+            keypad.applyTo(emulator);
+        }
+
+        if (isTurbo()) {
+            emulator.runFrame(TURBO_INSTRUCTIONS_PER_FRAME);
+            sampleRates();
+            return;
+        }
+
+        instructionRemainder += instructionsPerSecond;
+        int instructionsPerFrame = instructionRemainder / TIMER_FREQUENCY;
+        instructionRemainder -= instructionsPerFrame * TIMER_FREQUENCY;
+
+        emulator.runFrame(instructionsPerFrame);
+        sampleRates();
+        if (paced) {
+            waitForNextFrame();
+        }
+    }
+
+    private void sampleRates() {
+        if (metrics != null) {
+            metrics.sampleRates();
+        }
+    }
+
+    private void waitForNextFrame() {
+        // Deadlines are absolute, so oversleeping one frame is compensated by a shorter wait for the next one.
+        nextFrameDeadline += FRAME_PERIOD_NANOS;
+
+        long remaining = nextFrameDeadline - System.nanoTime();
+        if (remaining < -MAX_LAG_NANOS) {
+            if (metrics != null) {
+                metrics.recordFrame(-remaining);
+            }
+            nextFrameDeadline = System.nanoTime();
+            return;
+        }
+
+        // parkNanos may return early, so keep parking until the deadline has actually passed.
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = nextFrameDeadline - System.nanoTime();
+        }
+
+        if (metrics != null) {
+            metrics.recordFrame(-remaining);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package be.sanderl.chip8emu;
+
+import be.sanderl.chip8emu.movie.MovieRecorder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands key presses from the event thread over to the emulation thread without any locks.
+ * <p>
+ * Events are queued with a timestamp by a single producer (e.g. the AWT event thread) and applied to the emulator by
+ * a single consumer at frame boundaries, so a program always sees the same input at the same point of a frame. At
+ * most one transition per key is applied every frame; a key tapped faster than that is still seen as pressed for one
+ * whole frame instead of being missed.
+ */
+public class Keypad {
+
+    public static final int KEY_COUNT = 16;
+
+    // Must be a power of two. Even mashing all keys at once takes a long time to fill this within a single frame.
+    private static final int QUEUE_SIZE = 64;
+    private static final int QUEUE_MASK = QUEUE_SIZE - 1;
+
+    // One bit per key, as last reported by the producer
+    private final AtomicInteger pressed = new AtomicInteger();
+
+    // Ring of events: the key in the lower nibble, bit 4 set for a press
+    private final int[] events = new int[QUEUE_SIZE];
+    private final long[] timestamps = new long[QUEUE_SIZE];
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Set when the producer could not queue an event; the consumer then resynchronizes from the mask instead.
+    private volatile boolean overflowed;
+
+    private volatile Thread waiter;
+    private long lastLatencyNanos;
+    private MovieRecorder recorder;
+
+    /**
+     * @param recorder which gets every transition right before it is applied, or null to stop recording
+     */
+    public void setRecorder(MovieRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Called from the producer thread only.
+     */
+    public void press(int key) {
+        update(key, true);
+    }
+
+    /**
+     * Called from the producer thread only.
+     */
+    public void release(int key) {
+        update(key, false);
+    }
+
+    private void update(int key, boolean isPressed) {
+        int bit = 1 << key;
+        int previous;
+        int next;
+        do {
+            previous = pressed.get();
+            next = isPressed ? previous | bit : previous & ~bit;
+        } while (!pressed.compareAndSet(previous, next));
+
+        // Auto-repeat fires press after press for a key being held down, which changes nothing.
+        if (previous == next) {
+            return;
+        }
+
+        long t = tail.get();
+        if (t - head.get() == QUEUE_SIZE) {
+            overflowed = true;
+        } else {
+            int index = (int) t & QUEUE_MASK;
+            events[index] = key | (isPressed ? KEY_COUNT : 0);
+            timestamps[index] = System.nanoTime();
+            // Publishes the event written above to the consumer. A full volatile write, not lazySet: it must not be
+            // reordered with the read of the waiter in wakeUp(), or a consumer about to park could miss the event.
+            tail.set(t + 1);
+        }
+
+        wakeUp();
+    }
+
+    /**
+     * Applies queued events to the emulator. Called from the emulation thread only, at the start of a frame.
+     */
+    public void applyTo(Chip8Emulator emulator) {
+        // Read before the overflow flag, so resynchronizing only drops events the mask read below already covers.
+        long t = tail.get();
+        if (overflowed) {
+            overflowed = false;
+            head.lazySet(t);
+            int keys = pressed.get();
+            int changed = keys ^ emulator.getKeys();
+            for (int key = 0; key < KEY_COUNT; key++) {
+                if ((changed & 1 << key) != 0) {
+                    apply(emulator, key, (keys & 1 << key) != 0);
+                }
+            }
+            return;
+        }
+
+        long h = head.get();
+        int changed = 0;
+        while (h != t) {
+            int index = (int) h & QUEUE_MASK;
+            int event = events[index];
+            int bit = 1 << (event & 0xF);
+
+            // A second transition of the same key has to wait for the next frame.
+            if ((changed & bit) != 0) {
+                break;
+            }
+            changed |= bit;
+
+            apply(emulator, event & 0xF, event >= KEY_COUNT);
+            lastLatencyNanos = System.nanoTime() - timestamps[index];
+            h++;
+        }
+        head.lazySet(h);
+    }
+
+    private void apply(Chip8Emulator emulator, int key, boolean isPressed) {
+        if (recorder != null) {
+            recorder.keyChanged(key, isPressed);
+        }
+        emulator.setInput(key, isPressed);
+    }
+
+    /**
+     * @return true if there are events which have not been applied yet
+     */
+    public boolean hasPendingEvents() {
+        return overflowed || head.get() != tail.get();
+    }
+
+    /**
+     * Parks the calling thread until an event arrives or {@link #wakeUp()} is called.
+     */
+    public void awaitEvent() {
+        waiter = Thread.currentThread();
+        // Checked after registering, so an event arriving in between still unparks us (or already is visible).
+        while (!hasPendingEvents() && waiter != null) {
+            LockSupport.park(this);
+        }
+        waiter = null;
+    }
+
+    /**
+     * Makes a thread parked in {@link #awaitEvent()} return, e.g. because the debugger got toggled.
+     */
+    public void wakeUp() {
+        Thread thread = waiter;
+        if (thread != null) {
+            waiter = null;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return one bit per key that is currently pressed, as reported by the producer
+     */
+    public int getPressedKeys() {
+        return pressed.get();
+    }
+
+    /**
+     * @return how long the last applied event was queued for
+     */
+    public long getLastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+}
@@ -1,7 +1,15 @@
 package be.sanderl.chip8emu;
 
+import be.sanderl.chip8emu.metrics.EmulatorMetrics;
+import be.sanderl.chip8emu.movie.InputMovie;
+import be.sanderl.chip8emu.movie.MovieRecorder;
 import be.sanderl.chip8emu.renderer.AWTRenderer;
+import be.sanderl.chip8emu.rom.RomPack;
+import be.sanderl.chip8emu.sound.AudioSink;
+import be.sanderl.chip8emu.sound.LineAudioSink;
+import be.sanderl.chip8emu.trace.TraceRecorder;
 
+import javax.sound.sampled.LineUnavailableException;
 import javax.swing.*;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -10,51 +18,137 @@ import java.nio.file.Paths;
 
 public class Main {
 
+    // Most programs were written for CPUs running somewhere between 500 and 1000 instructions per second.
+    private static final int INSTRUCTIONS_PER_SECOND = 600;
+
+    // About 50 ms worth of samples; enough to survive a hiccup of the sound thread without adding noticeable latency.
+    private static final int AUDIO_BUFFER_SIZE = 2048;
+
+    // How long exiting waits for the emulation thread to finish its frame and write out the movie and trace.
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2000;
+
+    private volatile boolean running = true;
+
+    /**
+     * Usage: {@code Main [program]} or {@code Main <pack.c8pk> <name or hex content hash>}
+     */
     public static void main(String[] args) {
         try {
-            new Main();
+            new Main(args);
         } catch (Exception e) {
             System.err.println("An error occurred while emulating.");
             System.err.println(e.getMessage());
         }
     }
 
-    public Main() {
+    public Main(String[] args) throws IOException {
 
-        // Initialize Chip-8 emulator
-        Chip8Emulator emulator = new Chip8Emulator();
+        // Initialize Chip-8 emulator; run with -Dchip8.mode=SUPER_CHIP or XO_CHIP for programs using those extensions.
+        Chip8Mode mode = Chip8Mode.valueOf(System.getProperty("chip8.mode", Chip8Mode.CHIP8.name()));
+        Chip8Emulator emulator = new Chip8Emulator(mode);
         emulator.init();
-        emulator.loadProgram(Main.readProgramFile("breakout.ch8"));
-        // emulator.debugEnabled = true;
+        byte[] program;
+        if (args.length >= 2 && args[0].endsWith(".c8pk")) {
+            try (RomPack pack = RomPack.open(Paths.get(args[0]))) {
+                int entry = findEntry(pack, args[1]);
+                pack.load(entry, emulator);
+                program = pack.read(entry);
+            }
+        } else {
+            program = Main.readProgramFile(args.length > 0 ? args[0] : "breakout.ch8");
+            emulator.loadProgram(program);
+        }
+
+        // Run with e.g. -Dchip8.break=2A0,2F4 to pause at those addresses; F12 pauses or resumes, F8 single-steps.
+        Debugger debugger = new Debugger(emulator);
+        String breakpoints = System.getProperty("chip8.break");
+        if (breakpoints != null) {
+            for (String address : breakpoints.split(",")) {
+                debugger.addBreakpoint(Integer.parseInt(address.trim(), 16));
+            }
+        }
 
         // Set up graphics, sound and input
         AWTRenderer renderer = new AWTRenderer(emulator, 10);
-        Input input = new Input(emulator);
-        Sound sound = new Sound(emulator);
+        Keypad keypad = new Keypad();
+        Input input = new Input(keypad, debugger);
+        Sound sound = new Sound(emulator, createAudioSink());
         createWindow(renderer, input);
+        FrameScheduler scheduler = new FrameScheduler(emulator, INSTRUCTIONS_PER_SECOND);
+        scheduler.setKeypad(keypad);
+
+        // Run with -Dchip8.record=<file> to record an input movie, which MovieReplayer can play back headless.
+        String moviePath = System.getProperty("chip8.record");
+        MovieRecorder recorder = null;
+        if (moviePath != null) {
+            long seed = System.nanoTime();
+            emulator.setSeed(seed);
+            InputMovie movie = new InputMovie(mode, seed, INSTRUCTIONS_PER_SECOND, program);
+            recorder = new MovieRecorder(movie, emulator);
+            keypad.setRecorder(recorder);
+        }
+
+        // Run with -Dchip8.trace=<file> to record every executed instruction, which TraceDecoder turns into a listing.
+        String tracePath = System.getProperty("chip8.trace");
+        TraceRecorder tracer = null;
+        if (tracePath != null) {
+            tracer = new TraceRecorder(Paths.get(tracePath), mode);
+            emulator.setTracer(tracer);
+        }
+
+        // Both are only touched by the emulation thread, so exiting first stops it and lets it write them out itself.
+        Thread emulation = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> stop(emulation, keypad, debugger)));
+        sound.start();
+
+        // Statistics can be watched with any JMX client, e.g. jconsole.
+        EmulatorMetrics metrics = new EmulatorMetrics(emulator, "main");
+        metrics.register();
+        scheduler.setMetrics(metrics);
+        renderer.setMetrics(metrics);
 
         // May the gods be in our favor; let's kick off the emulation!
-        while (true) {
+        int reportedBreaks = 0;
+        while (running) {
 
-            if (emulator.debugEnabled) {
+            if (debugger.isPaused()) {
+                if (debugger.getBreakCount() != reportedBreaks) {
+                    reportedBreaks = debugger.getBreakCount();
+                    System.out.println(debugger.getLastBreak());
+                }
                 emulator.debug();
-                while (!emulator.debugStepRequested && emulator.debugEnabled) {
-                    sleep(50);
+
+                // Single-stepping executes one instruction at a time, without any timer ticks.
+                if (debugger.awaitStep()) {
+                    keypad.applyTo(emulator);
+                    emulator.runCycle();
                 }
-                emulator.debugStepRequested = false;
+            } else {
+                scheduler.runFrame();
             }
 
-            emulator.runCycle();
-
-            if (emulator.dirtyGraphics || emulator.clearScreen) {
-                renderer.repaint();
-            }
+            renderer.publishFrame();
+        }
 
-            if (emulator.makeBeep) {
-                sound.beep();
-            }
+        if (recorder != null) {
+            writeMovie(recorder, Paths.get(moviePath));
+        }
+        if (tracer != null) {
+            closeTrace(emulator, tracer);
+        }
+    }
 
-            sleep(17);
+    /**
+     * Called by the shutdown hook: ends the emulation loop, wherever it is parked, and waits for it to finish.
+     */
+    private void stop(Thread emulation, Keypad keypad, Debugger debugger) {
+        running = false;
+        debugger.resume();
+        keypad.wakeUp();
+        try {
+            emulation.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -72,6 +166,47 @@ public class Main {
         return program;
     }
 
+    private static int findEntry(RomPack pack, String key) {
+        int entry = pack.find(key);
+        if (entry < 0 && key.matches("[0-9a-fA-F]{1,16}")) {
+            entry = pack.find(Long.parseUnsignedLong(key, 16));
+        }
+        if (entry < 0) {
+            System.err.println(String.format("There is no program '%s' in the pack.", key));
+            System.exit(1);
+        }
+        return entry;
+    }
+
+    private static void writeMovie(MovieRecorder recorder, Path path) {
+        try {
+            recorder.finish().write(path);
+        } catch (IOException ioe) {
+            System.err.println(String.format("Could not write movie to '%s'.", path.toAbsolutePath()));
+        }
+    }
+
+    private static void closeTrace(Chip8Emulator emulator, TraceRecorder tracer) {
+        emulator.setTracer(null);
+        try {
+            tracer.close();
+        } catch (IOException ioe) {
+            System.err.println(String.format("Could not write trace: %s", ioe.getMessage()));
+        }
+        if (tracer.getDroppedRecords() > 0) {
+            System.err.println(String.format("The trace misses %d records.", tracer.getDroppedRecords()));
+        }
+    }
+
+    private static AudioSink createAudioSink() {
+        try {
+            return new LineAudioSink(AUDIO_BUFFER_SIZE);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.err.println(String.format("Sound is not available: %s", e.getMessage()));
+            return AudioSink.NULL;
+        }
+    }
+
     private JFrame createWindow(JComponent component, Input input) {
         JFrame frame = new JFrame();
         frame.add(component);
@@ -82,12 +217,4 @@ public class Main {
         frame.setVisible(true);
         return frame;
     }
-
-    private void sleep(long millis) {
-        try {
-            Thread.sleep(millis);
-        } catch (InterruptedException ie) {
-            // careCup.isEmpty() -> true
-        }
-    }
 }
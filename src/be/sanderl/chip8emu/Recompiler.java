@@ -0,0 +1,228 @@
+package be.sanderl.chip8emu;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Translates basic blocks of CHIP-8 code into hidden classes, which HotSpot can then inline and optimize as a whole.
+ * A block is a run of straight-line instructions, ended by the first instruction that reads or changes the program
+ * counter, draws, waits for input or writes memory.
+ */
+final class Recompiler {
+
+    private static final int MAX_BLOCK_INSTRUCTIONS = 64;
+
+    // Blocks only depend on their start address and instructions, so every emulator can share them.
+    // The limit merely keeps a long-running host with an ever-changing set of programs from growing without bounds.
+    private static final int MAX_SHARED_BLOCKS = 1 << 16;
+    private static final Map<BlockKey, Block> SHARED_BLOCKS = new ConcurrentHashMap<>();
+
+    // Every thread reads the instructions at hand into a key of its own, so self-modifying code which keeps going
+    // back to instructions seen before finds their block again without allocating anything.
+    private static final ThreadLocal<BlockKey> PROBES =
+            ThreadLocal.withInitial(() -> new BlockKey(Chip8Mode.CHIP8, 0, new char[MAX_BLOCK_INSTRUCTIONS], 0));
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private Recompiler() {
+    }
+
+    /**
+     * @return the block starting at the given address, or null if not even a single instruction fits in memory there
+     */
+    static Block compile(byte[] memory, int start, Chip8Mode mode) {
+        BlockKey probe = PROBES.get();
+        char[] instructions = probe.instructions;
+        int count = 0;
+        int address = start;
+
+        while (count < MAX_BLOCK_INSTRUCTIONS && address + 1 < memory.length) {
+            int instruction = (memory[address] & 0xFF) << 8 | (memory[address + 1] & 0xFF);
+            instructions[count++] = (char) instruction;
+            address += 2;
+
+            if (endsBlock(Decoder.handler(Decoder.decode(instruction, mode)))) {
+                break;
+            }
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        probe.set(mode, start, count);
+        Block block = SHARED_BLOCKS.get(probe);
+        if (block != null) {
+            return block;
+        }
+
+        if (SHARED_BLOCKS.size() >= MAX_SHARED_BLOCKS) {
+            SHARED_BLOCKS.clear();
+        }
+
+        BlockKey key = new BlockKey(mode, start, Arrays.copyOf(instructions, count), count);
+        return SHARED_BLOCKS.computeIfAbsent(key, Recompiler::generate);
+    }
+
+    private static boolean endsBlock(int handler) {
+        switch (handler) {
+            case Decoder.RET:
+            case Decoder.JP:
+            case Decoder.CALL:
+            case Decoder.SE_BYTE:
+            case Decoder.SNE_BYTE:
+            case Decoder.SE_REG:
+            case Decoder.SNE_REG:
+            case Decoder.JP_V0:
+            case Decoder.DRW:
+            case Decoder.SKP:
+            case Decoder.SKNP:
+            case Decoder.LD_VX_K:
+            case Decoder.LD_B:
+            case Decoder.LD_I_VX:
+            case Decoder.EXIT:
+            case Decoder.DRW_EXTENDED:
+            case Decoder.SAVE_RANGE:
+            case Decoder.LD_I_LONG:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Block generate(BlockKey key) {
+        BlockClassWriter writer = new BlockClassWriter();
+        char[] instructions = key.instructions;
+        int end = key.start + instructions.length * 2;
+
+        for (int ii = 0; ii < instructions.length; ii++) {
+            int decoded = Decoder.decode(instructions[ii], key.mode);
+            int handler = Decoder.handler(decoded);
+            boolean last = ii == instructions.length - 1;
+
+            // The block's last instruction runs with the program counter past the block, just like it would when
+            // interpreted. Instructions which overwrite the program counter anyway don't need it to be set first.
+            if (last && handler != Decoder.JP && handler != Decoder.JP_V0 && handler != Decoder.RET) {
+                writer.invoke("jp", end);
+            }
+            emit(writer, decoded);
+        }
+
+        try {
+            MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(writer.toByteArray(), true);
+            CompiledBlock code = (CompiledBlock) hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+            return new Block(key.start, end, instructions, code);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not generate block at " + key.start, t);
+        }
+    }
+
+    private static void emit(BlockClassWriter writer, int decoded) {
+        int x = Decoder.x(decoded);
+        int y = Decoder.y(decoded);
+
+        switch (Decoder.handler(decoded)) {
+            case Decoder.CLS: writer.invoke("cls"); break;
+            case Decoder.RET: writer.invoke("ret"); break;
+            case Decoder.JP: writer.invoke("jp", Decoder.nnn(decoded)); break;
+            case Decoder.CALL: writer.invoke("call", Decoder.nnn(decoded)); break;
+            case Decoder.SE_BYTE: writer.invoke("seByte", x, Decoder.kk(decoded)); break;
+            case Decoder.SNE_BYTE: writer.invoke("sneByte", x, Decoder.kk(decoded)); break;
+            case Decoder.SE_REG: writer.invoke("seReg", x, y); break;
+            case Decoder.LD_BYTE: writer.invoke("ldByte", x, Decoder.kk(decoded)); break;
+            case Decoder.ADD_BYTE: writer.invoke("addByte", x, Decoder.kk(decoded)); break;
+            case Decoder.LD_REG: writer.invoke("ldReg", x, y); break;
+            case Decoder.OR: writer.invoke("or", x, y); break;
+            case Decoder.AND: writer.invoke("and", x, y); break;
+            case Decoder.XOR: writer.invoke("xor", x, y); break;
+            case Decoder.ADD_REG: writer.invoke("addReg", x, y); break;
+            case Decoder.SUB: writer.invoke("sub", x, y); break;
+            case Decoder.SHR: writer.invoke("shr", x); break;
+            case Decoder.SUBN: writer.invoke("subn", x, y); break;
+            case Decoder.SHL: writer.invoke("shl", x); break;
+            case Decoder.SNE_REG: writer.invoke("sneReg", x, y); break;
+            case Decoder.LD_I: writer.invoke("ldI", Decoder.nnn(decoded)); break;
+            case Decoder.JP_V0: writer.invoke("jpV0", Decoder.nnn(decoded)); break;
+            case Decoder.RND: writer.invoke("rnd", x, Decoder.kk(decoded)); break;
+            case Decoder.DRW: writer.invoke("drw", x, y, Decoder.n(decoded)); break;
+            case Decoder.SKP: writer.invoke("skp", x); break;
+            case Decoder.SKNP: writer.invoke("sknp", x); break;
+            case Decoder.LD_VX_DT: writer.invoke("ldVxDt", x); break;
+            case Decoder.LD_VX_K: writer.invoke("ldVxK", x); break;
+            case Decoder.LD_DT_VX: writer.invoke("ldDtVx", x); break;
+            case Decoder.LD_ST_VX: writer.invoke("ldStVx", x); break;
+            case Decoder.ADD_I: writer.invoke("addI", x); break;
+            case Decoder.LD_F: writer.invoke("ldF", x); break;
+            case Decoder.LD_B: writer.invoke("ldB", x); break;
+            case Decoder.LD_I_VX: writer.invoke("ldIVx", x); break;
+            case Decoder.LD_VX_I: writer.invoke("ldVxI", x); break;
+            case Decoder.SCD: writer.invoke("scd", Decoder.n(decoded)); break;
+            case Decoder.SCU: writer.invoke("scu", Decoder.n(decoded)); break;
+            case Decoder.SCR: writer.invoke("scr"); break;
+            case Decoder.SCL: writer.invoke("scl"); break;
+            case Decoder.EXIT: writer.invoke("exit"); break;
+            case Decoder.LOW: writer.invoke("low"); break;
+            case Decoder.HIGH: writer.invoke("high"); break;
+            case Decoder.DRW_EXTENDED: writer.invoke("drwExtended", x, y, Decoder.n(decoded)); break;
+            case Decoder.LD_HF: writer.invoke("ldHf", x); break;
+            case Decoder.LD_R_VX: writer.invoke("ldRVx", x); break;
+            case Decoder.LD_VX_R: writer.invoke("ldVxR", x); break;
+            case Decoder.SAVE_RANGE: writer.invoke("saveRange", x, y); break;
+            case Decoder.LOAD_RANGE: writer.invoke("loadRange", x, y); break;
+            case Decoder.LD_I_LONG: writer.invoke("ldILong"); break;
+            case Decoder.PLANE: writer.invoke("plane", x); break;
+            case Decoder.AUDIO: writer.invoke("audio"); break;
+            case Decoder.PITCH: writer.invoke("pitch", x); break;
+            default: writer.invoke("unknown", decoded & 0xFFFF);
+        }
+    }
+
+    /**
+     * The first count instructions make up the key. Keys in the map never change; a thread's probe is reused for
+     * every lookup.
+     */
+    private static final class BlockKey {
+
+        // The same instructions may decode differently in another mode.
+        private Chip8Mode mode;
+        private int start;
+        private final char[] instructions;
+        private int count;
+        private int hash;
+
+        BlockKey(Chip8Mode mode, int start, char[] instructions, int count) {
+            this.instructions = instructions;
+            set(mode, start, count);
+        }
+
+        void set(Chip8Mode mode, int start, int count) {
+            this.mode = mode;
+            this.start = start;
+            this.count = count;
+            int hash = 31 * mode.ordinal() + start;
+            for (int ii = 0; ii < count; ii++) {
+                hash = 31 * hash + instructions[ii];
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey other = (BlockKey) o;
+            return mode == other.mode && start == other.start
+                    && Arrays.equals(instructions, 0, count, other.instructions, 0, other.count);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,46 +1,104 @@
 package be.sanderl.chip8emu;
 
-import javax.sound.midi.*;
+import be.sanderl.chip8emu.sound.AudioSink;
 
-public class Sound {
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Generates the Chip-8 tone: a square wave that plays for as long as the sound timer runs.
+ * <p>
+ * Audio is produced one frame (1/60th of a second) at a time. With a real-time sink, {@link #start()} runs a single
+ * long-lived thread which keeps feeding the sink, paced by the sink blocking until it has room again. Otherwise the
+ * host calls {@link #renderFrame()} after every emulated frame.
+ */
+public class Sound implements Closeable {
+
+    private static final int SAMPLES_PER_FRAME = AudioSink.SAMPLE_RATE / FrameScheduler.TIMER_FREQUENCY;
+    private static final int TONE_FREQUENCY = 440;
+    private static final byte AMPLITUDE = 24;
 
-    private Synthesizer synthesizer;
-    private MidiChannel midiChannel;
     private final Chip8Emulator emulator;
+    private final AudioSink sink;
+    private final byte[] samples = new byte[SAMPLES_PER_FRAME];
 
-    private Runnable soundRunnable = new Runnable() {
-        @Override
-        public void run() {
-            midiChannel.noteOn(60, 120);
-            midiChannel.allSoundOff();
-        }
-    };
+    // Position within the square wave, in 1/SAMPLE_RATE of a period, so the tone stays in tune across frames.
+    private int phase;
+    private boolean silent = true;
 
-    public Sound(Chip8Emulator emulator) {
-        try {
-            synthesizer = MidiSystem.getSynthesizer();
-            synthesizer.open();
-            midiChannel = synthesizer.getChannels()[0];
-        } catch (MidiUnavailableException mue) {
-            System.err.println(String.format("Sound is not available: %s", mue.getMessage()));
-        }
+    private Thread thread;
+    private volatile boolean running;
 
+    public Sound(Chip8Emulator emulator, AudioSink sink) {
         this.emulator = emulator;
+        this.sink = sink;
+    }
+
+    /**
+     * Starts feeding the sink from a thread of its own.
+     */
+    public void start() {
+        if (sink == AudioSink.NULL) {
+            return;
+        }
+        if (!sink.isRealTime()) {
+            throw new IllegalStateException("Only real-time sinks can be fed by a thread; call renderFrame() instead");
+        }
+
+        running = true;
+        thread = new Thread(() -> {
+            while (running) {
+                renderFrame();
+            }
+        }, "chip8-sound");
+        thread.setDaemon(true);
+        thread.start();
     }
 
-    public void beep() {
-        new Thread() {
-            @Override
-            public void run() {
-                midiChannel.noteOn(60, 120);
-                try {
-                    this.sleep(60);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+    /**
+     * Writes one frame of audio to the sink, gated by the current state of the sound timer.
+     */
+    public void renderFrame() {
+        if (sink == AudioSink.NULL) {
+            return;
+        }
+
+        if (emulator.isSoundActive()) {
+            for (int ii = 0; ii < SAMPLES_PER_FRAME; ii++) {
+                samples[ii] = phase < AudioSink.SAMPLE_RATE / 2 ? AMPLITUDE : -AMPLITUDE;
+                phase += TONE_FREQUENCY;
+                if (phase >= AudioSink.SAMPLE_RATE) {
+                    phase -= AudioSink.SAMPLE_RATE;
                 }
-                midiChannel.allSoundOff();
             }
-        }.start();
-        emulator.makeBeep = false;
+            silent = false;
+        } else if (!silent) {
+            // Silence only needs to be written into the buffer once.
+            for (int ii = 0; ii < SAMPLES_PER_FRAME; ii++) {
+                samples[ii] = 0;
+            }
+            phase = 0;
+            silent = true;
+        }
+
+        try {
+            sink.write(samples, SAMPLES_PER_FRAME);
+        } catch (IOException ioe) {
+            System.err.println(String.format("Sound is not available: %s", ioe.getMessage()));
+            running = false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sink.close();
     }
 }
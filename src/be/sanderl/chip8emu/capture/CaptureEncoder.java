@@ -0,0 +1,64 @@
+package be.sanderl.chip8emu.capture;
+
+import be.sanderl.chip8emu.Chip8Mode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of encoder threads shared by any number of captures, e.g. one for every session of a batch job.
+ */
+public class CaptureEncoder {
+
+    private final ExecutorService executor;
+    private int queueSize = FrameCapture.DEFAULT_QUEUE_SIZE;
+
+    public CaptureEncoder() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public CaptureEncoder(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "capture-encoder-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param queueSize how many frames of a capture may wait for encoding before frames get dropped
+     */
+    public CaptureEncoder setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    /**
+     * Captures every frame into its own PNG file in the given directory, e.g. {@code prefix000042.png}.
+     *
+     * @param mode the mode of the emulator to capture, which sets the size and colors of the images
+     */
+    public FrameCapture pngSequence(Path directory, String prefix, Chip8Mode mode, int zoom) throws IOException {
+        return new FrameCapture(new PngSequenceSink(directory, prefix, mode, zoom), executor, queueSize);
+    }
+
+    /**
+     * Captures all frames into a single animated GIF, timed like they were shown.
+     *
+     * @param mode the mode of the emulator to capture, which sets the size and colors of the images
+     */
+    public FrameCapture gif(Path file, Chip8Mode mode, int zoom) throws IOException {
+        return new FrameCapture(new GifSink(file, mode, zoom), executor, queueSize);
+    }
+
+    /**
+     * Stops the encoder threads once all captures have been closed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,194 @@
+package be.sanderl.chip8emu.capture;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Captures the display of one emulator at every frame boundary and hands the frames to encoder threads.
+ * <p>
+ * The emulation thread only ever copies the display into a bounded queue: when the encoders fall behind and the
+ * queue is full, frames get dropped rather than making emulation wait. Frames identical to the previous one are
+ * left out altogether. The frames of a capture are encoded one at a time and in order, while different captures
+ * are encoded in parallel.
+ */
+public class FrameCapture implements Closeable {
+
+    public static final int DEFAULT_QUEUE_SIZE = 256;
+
+    // Queued after the last frame by close()
+    private static final Frame END = new Frame(null, 0, 0, 0);
+
+    private final FrameSink sink;
+    private final Executor executor;
+    private final ArrayBlockingQueue<Frame> queue;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    // Only touched by the emulation thread
+    private long[] previous;
+    private int previousWidth;
+    private long frameNumber;
+    private volatile long capturedFrames;
+    private volatile long duplicateFrames;
+    private volatile long droppedFrames;
+
+    private volatile IOException failure;
+
+    FrameCapture(FrameSink sink, Executor executor, int queueSize) {
+        this.sink = sink;
+        this.executor = executor;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    /**
+     * Takes the current display as the next frame. Called by the thread running the emulator, after every frame.
+     */
+    public void capture(Chip8Emulator emulator) {
+        long frame = frameNumber++;
+        int planeCount = emulator.getMode().getPlaneCount();
+        int planeLength = emulator.getDisplay().length;
+        int width = emulator.getDisplayWidth();
+        if (previous != null && previousWidth == width && isPrevious(emulator, planeCount, planeLength)) {
+            duplicateFrames++;
+            return;
+        }
+
+        long[] copy = new long[planeCount * planeLength];
+        for (int ii = 0; ii < planeCount; ii++) {
+            System.arraycopy(emulator.getPlane(ii), 0, copy, ii * planeLength, planeLength);
+        }
+        if (!queue.offer(new Frame(copy, width, emulator.getDisplayHeight(), frame))) {
+            droppedFrames++;
+            return;
+        }
+        // Only frames which actually made it count as previous, or a dropped change could never be captured again.
+        previous = copy;
+        previousWidth = width;
+        capturedFrames++;
+        schedule();
+    }
+
+    private boolean isPrevious(Chip8Emulator emulator, int planeCount, int planeLength) {
+        for (int ii = 0; ii < planeCount; ii++) {
+            long[] plane = emulator.getPlane(ii);
+            if (!Arrays.equals(previous, ii * planeLength, (ii + 1) * planeLength, plane, 0, planeLength)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Frame frame;
+            while ((frame = queue.poll()) != null) {
+                if (frame == END) {
+                    finish();
+                    return;
+                }
+                if (failure == null) {
+                    try {
+                        sink.write(frame.planes, frame.width, frame.height, frame.number);
+                    } catch (IOException ioe) {
+                        failure = ioe;
+                    } catch (RuntimeException re) {
+                        // Kept like any other failure, so the drain goes on and close() still gets to report it.
+                        failure = new IOException(String.format("Could not encode frame %d", frame.number), re);
+                    }
+                }
+            }
+
+            // A frame queued right after the last poll may have seen the flag still set; look once more.
+            scheduled.set(false);
+            if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void finish() {
+        try {
+            sink.close(frameNumber);
+        } catch (IOException ioe) {
+            if (failure == null) {
+                failure = ioe;
+            }
+        } catch (RuntimeException re) {
+            if (failure == null) {
+                failure = new IOException("Could not finish the capture", re);
+            }
+        } finally {
+            closed.countDown();
+        }
+    }
+
+    /**
+     * Waits until every queued frame has been encoded and finishes the output. Called by the thread running the
+     * emulator, after its last frame.
+     *
+     * @throws IOException if encoding or writing any of the frames failed, with the cause if encoding threw
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(END);
+            schedule();
+            closed.await();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while finishing the capture");
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public long getCapturedFrames() {
+        return capturedFrames;
+    }
+
+    /**
+     * @return the amount of frames left out because they were identical to the frame before
+     */
+    public long getDuplicateFrames() {
+        return duplicateFrames;
+    }
+
+    /**
+     * @return the amount of frames lost because the encoders couldn't keep up
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private static final class Frame {
+
+        // Every plane of the mode, one after the other
+        final long[] planes;
+        final int width;
+        final int height;
+        final long number;
+
+        Frame(long[] planes, int width, int height, long number) {
+            this.planes = planes;
+            this.width = width;
+            this.height = height;
+            this.number = number;
+        }
+    }
+}
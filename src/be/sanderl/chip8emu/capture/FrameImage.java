@@ -0,0 +1,80 @@
+package be.sanderl.chip8emu.capture;
+
+import be.sanderl.chip8emu.Chip8Mode;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+
+/**
+ * An image of the display at a fixed zoom factor, which can be redrawn for every frame. The image has the highest
+ * resolution of the mode, so lower resolutions are drawn with larger pixels. With two bit planes, every pixel has one
+ * of four colors, like on screen.
+ */
+final class FrameImage {
+
+    private static final IndexColorModel MONOCHROME = new IndexColorModel(1, 2,
+            new byte[] {0, (byte) 0xFF}, new byte[] {0, (byte) 0xFF}, new byte[] {0, (byte) 0xFF});
+
+    // Indexed by the bit of the first plane, plus twice the bit of the second plane
+    private static final IndexColorModel FOUR_COLORS = new IndexColorModel(2, 4,
+            new byte[] {0, (byte) 0xFF, (byte) 0xAA, 0x55}, new byte[] {0, (byte) 0xFF, (byte) 0xAA, 0x55},
+            new byte[] {0, (byte) 0xFF, (byte) 0xAA, 0x55});
+
+    final BufferedImage image;
+    private final Chip8Mode mode;
+    private final int zoom;
+    private final int planeLength;
+    private final int bitsPerPixel;
+    private final byte[] data;
+    private final int bytesPerLine;
+
+    FrameImage(Chip8Mode mode, int zoom) {
+        this.mode = mode;
+        this.zoom = zoom;
+        planeLength = mode.getMaxHeight() * mode.getMaxWidth() / 64;
+        bitsPerPixel = mode.getPlaneCount() == 1 ? 1 : 2;
+        image = new BufferedImage(mode.getMaxWidth() * zoom, mode.getMaxHeight() * zoom,
+                BufferedImage.TYPE_BYTE_BINARY, bitsPerPixel == 1 ? MONOCHROME : FOUR_COLORS);
+        data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        bytesPerLine = (image.getWidth() * bitsPerPixel + 7) / 8;
+    }
+
+    /**
+     * @param planes every plane of the mode one after the other, each laid out like
+     *               {@link be.sanderl.chip8emu.Chip8Emulator#getDisplay()}
+     * @param width  the resolution the planes were drawn at
+     */
+    void draw(long[] planes, int width, int height) {
+        int scale = zoom * mode.getMaxWidth() / width;
+        int rowWords = width / 64;
+        Arrays.fill(data, (byte) 0);
+
+        for (int y = 0; y < height; y++) {
+            // Build the first scaled scanline of the row, then copy it for the other ones.
+            int line = y * scale * bytesPerLine;
+            for (int x = 0; x < width; x++) {
+                int word = y * rowWords + (x >> 6);
+                int color = 0;
+                for (int plane = 0; plane < mode.getPlaneCount(); plane++) {
+                    if ((planes[plane * planeLength + word] << x) < 0) {
+                        color |= 1 << plane;
+                    }
+                }
+                if (color == 0) {
+                    continue;
+                }
+
+                for (int pixel = x * scale; pixel < (x + 1) * scale; pixel++) {
+                    int bit = pixel * bitsPerPixel;
+                    data[line + (bit >> 3)] |= color << (8 - bitsPerPixel - (bit & 7));
+                }
+            }
+
+            for (int copy = 1; copy < scale; copy++) {
+                System.arraycopy(data, line, data, line + copy * bytesPerLine, bytesPerLine);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package be.sanderl.chip8emu.capture;
+
+import java.io.IOException;
+
+/**
+ * Encodes the frames of a single capture. Frames arrive in order and from one thread at a time.
+ */
+interface FrameSink {
+
+    /**
+     * @param planes every plane of the mode one after the other, at the given resolution
+     * @param frame  the number of the frame; frames identical to their predecessor are left out, so numbers may skip
+     */
+    void write(long[] planes, int width, int height, long frame) throws IOException;
+
+    /**
+     * @param endFrame the number of the first frame after the capture, telling how long the last frame lasted
+     */
+    void close(long endFrame) throws IOException;
+}
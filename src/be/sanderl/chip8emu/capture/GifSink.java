@@ -0,0 +1,121 @@
+package be.sanderl.chip8emu.capture;
+
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.FrameScheduler;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Writes frames into a single looping, animated GIF. A frame's delay is only known once the next one arrives, so
+ * every frame is held back until then.
+ */
+final class GifSink implements FrameSink {
+
+    private static final String METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+
+    private final ImageWriter writer;
+    private final ImageOutputStream output;
+    private final FrameImage image;
+
+    private long[] heldPlanes;
+    private int heldWidth;
+    private int heldHeight;
+    private long heldFrame;
+    private boolean first = true;
+
+    // GIF delays are in hundredths of a second; the rounding error is carried over so the total length stays exact.
+    private long delayRemainder;
+
+    GifSink(Path file, Chip8Mode mode, int zoom) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
+        if (!writers.hasNext()) {
+            throw new IOException("No GIF writer available");
+        }
+        writer = writers.next();
+        output = ImageIO.createImageOutputStream(file.toFile());
+        writer.setOutput(output);
+        writer.prepareWriteSequence(null);
+        image = new FrameImage(mode, zoom);
+    }
+
+    @Override
+    public void write(long[] planes, int width, int height, long frame) throws IOException {
+        if (heldPlanes != null) {
+            writeHeld(frame);
+        }
+        heldPlanes = planes;
+        heldWidth = width;
+        heldHeight = height;
+        heldFrame = frame;
+    }
+
+    @Override
+    public void close(long endFrame) throws IOException {
+        try {
+            if (heldPlanes != null) {
+                writeHeld(endFrame);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+            output.close();
+        }
+    }
+
+    private void writeHeld(long nextFrame) throws IOException {
+        delayRemainder += (nextFrame - heldFrame) * 100;
+        long delay = delayRemainder / FrameScheduler.TIMER_FREQUENCY;
+        delayRemainder -= delay * FrameScheduler.TIMER_FREQUENCY;
+
+        image.draw(heldPlanes, heldWidth, heldHeight);
+        writer.writeToSequence(new IIOImage(image.image, null, metadata((int) Math.min(delay, 0xFFFF))), null);
+        first = false;
+    }
+
+    private IIOMetadata metadata(int delay) throws IOException {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image.image), param);
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(METADATA_FORMAT);
+
+        IIOMetadataNode control = child(root, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(delay));
+        control.setAttribute("transparentColorIndex", "0");
+
+        // Only the first frame carries the extension making the animation loop forever.
+        if (first) {
+            IIOMetadataNode extensions = child(root, "ApplicationExtensions");
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            loop.setUserObject(new byte[] {1, 0, 0});
+            extensions.appendChild(loop);
+        }
+
+        metadata.setFromTree(METADATA_FORMAT, root);
+        return metadata;
+    }
+
+    private static IIOMetadataNode child(IIOMetadataNode parent, String name) {
+        for (int ii = 0; ii < parent.getLength(); ii++) {
+            if (parent.item(ii).getNodeName().equals(name)) {
+                return (IIOMetadataNode) parent.item(ii);
+            }
+        }
+        IIOMetadataNode node = new IIOMetadataNode(name);
+        parent.appendChild(node);
+        return node;
+    }
+}
@@ -0,0 +1,37 @@
+package be.sanderl.chip8emu.capture;
+
+import be.sanderl.chip8emu.Chip8Mode;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes every frame to its own PNG file, named after the frame number so the sequence sorts in order.
+ */
+final class PngSequenceSink implements FrameSink {
+
+    private final Path directory;
+    private final String prefix;
+    private final FrameImage image;
+
+    PngSequenceSink(Path directory, String prefix, Chip8Mode mode, int zoom) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.prefix = prefix;
+        this.image = new FrameImage(mode, zoom);
+    }
+
+    @Override
+    public void write(long[] planes, int width, int height, long frame) throws IOException {
+        image.draw(planes, width, height);
+        Path file = directory.resolve(String.format("%s%06d.png", prefix, frame));
+        if (!ImageIO.write(image.image, "png", file.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    @Override
+    public void close(long endFrame) {
+    }
+}
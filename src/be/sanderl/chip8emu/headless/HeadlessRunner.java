@@ -0,0 +1,150 @@
+package be.sanderl.chip8emu.headless;
+
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.ExecutionEngine;
+import be.sanderl.chip8emu.capture.CaptureEncoder;
+import be.sanderl.chip8emu.capture.FrameCapture;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs many independent emulator sessions without any window, spread over a work-stealing pool.
+ * Sessions are not paced in any way; every core is kept busy until all of them are done.
+ */
+public class HeadlessRunner {
+
+    public static final int DEFAULT_INSTRUCTIONS_PER_FRAME = 10;
+
+    private static final int CAPTURE_ZOOM = 4;
+
+    // Below this amount of sessions a task stops splitting and simply runs them one after the other.
+    private static final int SESSIONS_PER_TASK = 4;
+
+    private final ForkJoinPool pool;
+    private int instructionsPerFrame = DEFAULT_INSTRUCTIONS_PER_FRAME;
+    private StopCondition stopCondition = StopCondition.NEVER;
+
+    public HeadlessRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public HeadlessRunner(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    public HeadlessRunner setInstructionsPerFrame(int instructionsPerFrame) {
+        this.instructionsPerFrame = instructionsPerFrame;
+        return this;
+    }
+
+    public HeadlessRunner setStopCondition(StopCondition stopCondition) {
+        this.stopCondition = stopCondition;
+        return this;
+    }
+
+    /**
+     * Runs every session for at most {@code maxFrames} frames and blocks until all of them are done.
+     */
+    public RunReport run(List<HeadlessSession> sessions, int maxFrames) {
+        long start = System.nanoTime();
+        pool.invoke(new SessionBatch(sessions, 0, sessions.size(), maxFrames));
+        return new RunReport(sessions, System.nanoTime() - start);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private class SessionBatch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<HeadlessSession> sessions;
+        private final int from;
+        private final int to;
+        private final int maxFrames;
+
+        SessionBatch(List<HeadlessSession> sessions, int from, int to, int maxFrames) {
+            this.sessions = sessions;
+            this.from = from;
+            this.to = to;
+            this.maxFrames = maxFrames;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SESSIONS_PER_TASK) {
+                for (int ii = from; ii < to; ii++) {
+                    sessions.get(ii).run(maxFrames, instructionsPerFrame, stopCondition);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new SessionBatch(sessions, from, middle, maxFrames),
+                    new SessionBatch(sessions, middle, to, maxFrames));
+        }
+    }
+
+    /**
+     * Usage: {@code HeadlessRunner <program> [instances] [frames] [engine] [capture directory]}
+     * <p>
+     * With a capture directory, every session records an animated GIF of its display into it. Programs for the
+     * extensions are run with e.g. {@code -Dchip8.mode=SUPER_CHIP}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: HeadlessRunner <program> [instances] [frames] [engine] [capture directory]");
+            System.exit(1);
+        }
+
+        byte[] program = Files.readAllBytes(Paths.get(args[0]));
+        int instances = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 600;
+        ExecutionEngine engine = args.length > 3 ? ExecutionEngine.valueOf(args[3]) : ExecutionEngine.INTERPRETER;
+        Chip8Mode mode = Chip8Mode.valueOf(System.getProperty("chip8.mode", Chip8Mode.CHIP8.name()));
+
+        List<HeadlessSession> sessions = new ArrayList<>(instances);
+        for (int ii = 0; ii < instances; ii++) {
+            HeadlessSession session = new HeadlessSession(args[0] + "#" + ii, mode, program);
+            session.getEmulator().setEngine(engine);
+            sessions.add(session);
+        }
+
+        CaptureEncoder encoder = null;
+        List<FrameCapture> captures = new ArrayList<>();
+        if (args.length > 4) {
+            Path directory = Files.createDirectories(Paths.get(args[4]));
+            encoder = new CaptureEncoder();
+            for (int ii = 0; ii < instances; ii++) {
+                Path file = directory.resolve(String.format("session-%d.gif", ii));
+                FrameCapture capture = encoder.gif(file, mode, CAPTURE_ZOOM);
+                sessions.get(ii).setCapture(capture);
+                captures.add(capture);
+            }
+        }
+
+        HeadlessRunner runner = new HeadlessRunner();
+        System.out.println(runner.run(sessions, frames));
+        runner.shutdown();
+
+        if (encoder != null) {
+            long captured = 0;
+            long dropped = 0;
+            for (FrameCapture capture : captures) {
+                capture.close();
+                captured += capture.getCapturedFrames();
+                dropped += capture.getDroppedFrames();
+            }
+            encoder.shutdown();
+            System.out.println(String.format("Captured %d frames, dropped %d", captured, dropped));
+        }
+    }
+}
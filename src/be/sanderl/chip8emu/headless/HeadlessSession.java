@@ -0,0 +1,110 @@
+package be.sanderl.chip8emu.headless;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.Sound;
+import be.sanderl.chip8emu.capture.FrameCapture;
+import be.sanderl.chip8emu.rom.RomPack;
+
+/**
+ * A single emulator instance without any window, sound or input attached to it.
+ * A session is only ever driven by one thread at a time.
+ */
+public class HeadlessSession {
+
+    private final String name;
+    private final Chip8Emulator emulator;
+    private Sound sound;
+    private FrameCapture capture;
+
+    private int framesExecuted;
+    private long instructionsExecuted;
+    private boolean stopped;
+
+    public HeadlessSession(String name, byte[] program) {
+        this(name, Chip8Mode.CHIP8, program);
+    }
+
+    public HeadlessSession(String name, Chip8Mode mode, byte[] program) {
+        this.name = name;
+        this.emulator = new Chip8Emulator(mode);
+        emulator.init();
+        emulator.loadProgram(program);
+    }
+
+    public HeadlessSession(String name, RomPack pack, int entry) {
+        this(name, Chip8Mode.CHIP8, pack, entry);
+    }
+
+    /**
+     * Loads the program straight from a ROM pack, without copying it onto the heap first.
+     */
+    public HeadlessSession(String name, Chip8Mode mode, RomPack pack, int entry) {
+        this.name = name;
+        this.emulator = new Chip8Emulator(mode);
+        emulator.init();
+        pack.load(entry, emulator);
+    }
+
+    /**
+     * Runs frames until either the frame limit has been reached or the stop condition holds.
+     */
+    void run(int maxFrames, int instructionsPerFrame, StopCondition stopCondition) {
+        while (!stopped && framesExecuted < maxFrames) {
+            // Frames end early while the program waits for a key, and skipped idle loops still show up in the
+            // instruction count; count only what actually ran.
+            long instructionsBefore = emulator.getInstructionCount() - emulator.getIdleInstructions();
+            emulator.runFrame(instructionsPerFrame);
+            if (sound != null) {
+                sound.renderFrame();
+            }
+            if (capture != null) {
+                capture.capture(emulator);
+            }
+            instructionsExecuted +=
+                    emulator.getInstructionCount() - emulator.getIdleInstructions() - instructionsBefore;
+            framesExecuted++;
+
+            if (stopCondition.shouldStop(emulator, framesExecuted)) {
+                stopped = true;
+            }
+        }
+    }
+
+    /**
+     * Renders the audio of every frame, e.g. into a WAV file. Sessions without sound skip audio altogether.
+     */
+    public void setSound(Sound sound) {
+        this.sound = sound;
+    }
+
+    /**
+     * Captures the display after every frame. The capture is left open, so it can span several runs.
+     */
+    public void setCapture(FrameCapture capture) {
+        this.capture = capture;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Chip8Emulator getEmulator() {
+        return emulator;
+    }
+
+    public int getFramesExecuted() {
+        return framesExecuted;
+    }
+
+    public long getInstructionsExecuted() {
+        return instructionsExecuted;
+    }
+
+    /**
+     * @return true if the session ended because its stop condition was met
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+}
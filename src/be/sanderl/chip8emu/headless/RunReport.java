@@ -0,0 +1,54 @@
+package be.sanderl.chip8emu.headless;
+
+import java.util.List;
+
+/**
+ * Aggregate outcome of a {@link HeadlessRunner} run.
+ */
+public class RunReport {
+
+    private final List<HeadlessSession> sessions;
+    private final long elapsedNanos;
+    private final long instructions;
+    private final long frames;
+
+    RunReport(List<HeadlessSession> sessions, long elapsedNanos) {
+        this.sessions = sessions;
+        this.elapsedNanos = elapsedNanos;
+
+        long instructions = 0;
+        long frames = 0;
+        for (HeadlessSession session : sessions) {
+            instructions += session.getInstructionsExecuted();
+            frames += session.getFramesExecuted();
+        }
+        this.instructions = instructions;
+        this.frames = frames;
+    }
+
+    public List<HeadlessSession> getSessions() {
+        return sessions;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public double getInstructionsPerSecond() {
+        return elapsedNanos == 0 ? 0 : instructions * 1_000_000_000d / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d sessions, %d frames, %d instructions in %.3f s (%.0f instructions/s)",
+                sessions.size(), frames, instructions, elapsedNanos / 1e9, getInstructionsPerSecond());
+    }
+}
@@ -0,0 +1,19 @@
+package be.sanderl.chip8emu.headless;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+
+/**
+ * Decides whether a headless session is done before it reaches its frame limit.
+ */
+@FunctionalInterface
+public interface StopCondition {
+
+    StopCondition NEVER = (emulator, frame) -> false;
+
+    /**
+     * @param emulator the emulator of the session, after the frame has been run
+     * @param frame    the number of frames the session has completed so far
+     * @return true if the session should not run any further frames
+     */
+    boolean shouldStop(Chip8Emulator emulator, int frame);
+}
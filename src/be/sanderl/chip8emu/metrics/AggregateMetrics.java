@@ -0,0 +1,108 @@
+package be.sanderl.chip8emu.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sums up every registered {@link EmulatorMetrics}, exposed as {@code be.sanderl.chip8emu:type=Aggregate}.
+ * Registered on demand by the first emulator that registers itself.
+ */
+public final class AggregateMetrics implements AggregateMetricsMBean {
+
+    private static final Set<EmulatorMetrics> INSTANCES = ConcurrentHashMap.newKeySet();
+    private static final AggregateMetrics INSTANCE = new AggregateMetrics();
+    private static boolean registered;
+
+    private AggregateMetrics() {
+    }
+
+    static void add(EmulatorMetrics metrics) {
+        INSTANCES.add(metrics);
+        register();
+    }
+
+    static void remove(EmulatorMetrics metrics) {
+        INSTANCES.remove(metrics);
+    }
+
+    private static synchronized void register() {
+        if (registered) {
+            return;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(INSTANCE, new ObjectName("be.sanderl.chip8emu:type=Aggregate"));
+            registered = true;
+        } catch (JMException jme) {
+            throw new IllegalStateException("Could not register the aggregate metrics", jme);
+        }
+    }
+
+    @Override
+    public int getInstances() {
+        return INSTANCES.size();
+    }
+
+    @Override
+    public long getInstructions() {
+        long instructions = 0;
+        for (EmulatorMetrics metrics : INSTANCES) {
+            instructions += metrics.getInstructions();
+        }
+        return instructions;
+    }
+
+    @Override
+    public double getInstructionsPerSecond() {
+        double rate = 0;
+        for (EmulatorMetrics metrics : INSTANCES) {
+            rate += metrics.getInstructionsPerSecond();
+        }
+        return rate;
+    }
+
+    @Override
+    public long[] getOpcodeFamilyCounts() {
+        long[] total = new long[16];
+        long[] counts = new long[16];
+        for (EmulatorMetrics metrics : INSTANCES) {
+            metrics.getEmulator().getOpcodeCounts(counts);
+            for (int ii = 0; ii < total.length; ii++) {
+                total[ii] += counts[ii];
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public long getFrames() {
+        long frames = 0;
+        for (EmulatorMetrics metrics : INSTANCES) {
+            frames += metrics.getFrames();
+        }
+        return frames;
+    }
+
+    @Override
+    public long getDrawCalls() {
+        long drawCalls = 0;
+        for (EmulatorMetrics metrics : INSTANCES) {
+            drawCalls += metrics.getDrawCalls();
+        }
+        return drawCalls;
+    }
+
+    @Override
+    public long getUnknownInstructions() {
+        long unknown = 0;
+        for (EmulatorMetrics metrics : INSTANCES) {
+            unknown += metrics.getUnknownInstructions();
+        }
+        return unknown;
+    }
+}
@@ -0,0 +1,24 @@
+package be.sanderl.chip8emu.metrics;
+
+/**
+ * Management interface summing up every registered emulator instance.
+ */
+public interface AggregateMetricsMBean {
+
+    int getInstances();
+
+    long getInstructions();
+
+    /**
+     * @return the combined speed of all instances, each measured over the last whole second it ran
+     */
+    double getInstructionsPerSecond();
+
+    long[] getOpcodeFamilyCounts();
+
+    long getFrames();
+
+    long getDrawCalls();
+
+    long getUnknownInstructions();
+}
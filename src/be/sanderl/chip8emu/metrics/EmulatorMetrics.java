@@ -0,0 +1,142 @@
+package be.sanderl.chip8emu.metrics;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Exposes the statistics of one emulator as an MBean named {@code be.sanderl.chip8emu:type=Emulator,name=<name>}.
+ * <p>
+ * The emulator counts instructions itself; this class only adds what the host knows about, i.e. frame pacing and
+ * repaints. Recording is done by a single thread each (the emulation thread and the event dispatch thread
+ * respectively) into plain fields, so it costs next to nothing. Reads from other threads may lag slightly behind.
+ */
+public class EmulatorMetrics implements EmulatorMetricsMBean {
+
+    public static final int JITTER_BUCKETS = 16;
+
+    private final Chip8Emulator emulator;
+    private final ObjectName objectName;
+    private final Rate instructionRate;
+
+    private final long[] jitterHistogram = new long[JITTER_BUCKETS];
+    private long repaints;
+    private long repaintNanos;
+
+    public EmulatorMetrics(Chip8Emulator emulator, String name) {
+        this.emulator = emulator;
+        instructionRate = new Rate(emulator.getInstructionCount());
+        try {
+            objectName = new ObjectName("be.sanderl.chip8emu:type=Emulator,name=" + ObjectName.quote(name));
+        } catch (JMException jme) {
+            throw new IllegalArgumentException(jme);
+        }
+    }
+
+    /**
+     * Registers this instance with the platform MBean server and adds it to the aggregate.
+     */
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, objectName);
+        } catch (JMException jme) {
+            throw new IllegalStateException(String.format("Could not register %s", objectName), jme);
+        }
+        AggregateMetrics.add(this);
+    }
+
+    public void unregister() {
+        AggregateMetrics.remove(this);
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException jme) {
+            // Already gone
+        }
+    }
+
+    /**
+     * @param latenessNanos how long after its deadline a frame started running
+     */
+    public void recordFrame(long latenessNanos) {
+        long micros = Math.max(0, latenessNanos / 1000);
+        int bucket = Math.min(JITTER_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        jitterHistogram[bucket]++;
+    }
+
+    /**
+     * Updates the rates once a second. Called by the thread running the emulator after every frame.
+     */
+    public void sampleRates() {
+        long now = System.nanoTime();
+        if (instructionRate.isDue(now)) {
+            instructionRate.sample(emulator.getInstructionCount(), now);
+        }
+    }
+
+    public void recordRepaint(long nanos) {
+        repaints++;
+        repaintNanos += nanos;
+    }
+
+    Chip8Emulator getEmulator() {
+        return emulator;
+    }
+
+    @Override
+    public long getInstructions() {
+        return emulator.getInstructionCount();
+    }
+
+    @Override
+    public double getInstructionsPerSecond() {
+        return instructionRate.get();
+    }
+
+    @Override
+    public long[] getOpcodeFamilyCounts() {
+        long[] counts = new long[16];
+        emulator.getOpcodeCounts(counts);
+        return counts;
+    }
+
+    @Override
+    public long getFrames() {
+        return emulator.getFrameCount();
+    }
+
+    @Override
+    public long getDrawCalls() {
+        return emulator.getDrawCalls();
+    }
+
+    @Override
+    public double getDrawCallsPerFrame() {
+        long frames = getFrames();
+        return frames == 0 ? 0 : (double) getDrawCalls() / frames;
+    }
+
+    @Override
+    public long getUnknownInstructions() {
+        return emulator.getUnknownInstructions();
+    }
+
+    @Override
+    public long getIdleInstructions() {
+        return emulator.getIdleInstructions();
+    }
+
+    @Override
+    public double getAverageRepaintMicros() {
+        long count = repaints;
+        return count == 0 ? 0 : repaintNanos / 1000d / count;
+    }
+
+    @Override
+    public long[] getFrameJitterHistogram() {
+        return jitterHistogram.clone();
+    }
+}
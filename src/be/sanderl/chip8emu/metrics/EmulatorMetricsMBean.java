@@ -0,0 +1,40 @@
+package be.sanderl.chip8emu.metrics;
+
+/**
+ * Management interface of a single emulator instance.
+ */
+public interface EmulatorMetricsMBean {
+
+    long getInstructions();
+
+    /**
+     * @return the average speed during the last whole second the emulator ran, or 0 during the first one
+     */
+    double getInstructionsPerSecond();
+
+    /**
+     * @return the amount of executed instructions per opcode family, indexed by the upper nibble of the instruction
+     */
+    long[] getOpcodeFamilyCounts();
+
+    long getFrames();
+
+    long getDrawCalls();
+
+    double getDrawCallsPerFrame();
+
+    long getUnknownInstructions();
+
+    /**
+     * @return the amount of instructions of idle loops which were skipped instead of executed
+     */
+    long getIdleInstructions();
+
+    double getAverageRepaintMicros();
+
+    /**
+     * @return the amount of frames per lateness bucket; bucket 0 holds frames which started less than 1 microsecond late,
+     * bucket n frames which started between 2^(n-1) and 2^n microseconds late, and the last bucket everything later than that
+     */
+    long[] getFrameJitterHistogram();
+}
@@ -0,0 +1,38 @@
+package be.sanderl.chip8emu.metrics;
+
+/**
+ * Turns an ever-increasing counter into a rate per second. The thread driving the counter samples it about once per
+ * second; readers only get the rate of the last complete period, so reading never changes what others see.
+ */
+final class Rate {
+
+    private static final long PERIOD_NANOS = 1_000_000_000L;
+
+    private long lastCount;
+    private long lastNanos = System.nanoTime();
+    private volatile double rate;
+
+    Rate(long count) {
+        lastCount = count;
+    }
+
+    /**
+     * Called by the thread driving the counter only.
+     */
+    void sample(long count, long now) {
+        rate = (count - lastCount) * 1_000_000_000d / (now - lastNanos);
+        lastCount = count;
+        lastNanos = now;
+    }
+
+    /**
+     * @return true once a period has passed since the previous sample
+     */
+    boolean isDue(long now) {
+        return now - lastNanos >= PERIOD_NANOS;
+    }
+
+    double get() {
+        return rate;
+    }
+}
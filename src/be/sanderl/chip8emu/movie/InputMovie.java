@@ -0,0 +1,166 @@
+package be.sanderl.chip8emu.movie;
+
+import be.sanderl.chip8emu.Chip8Mode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Every key transition of a session, by the frame it got applied in, together with everything else needed to play
+ * the session back exactly: the mode, the seed of the random number generator, the CPU speed and a checksum of the
+ * program.
+ * <p>
+ * A movie always starts at power-on, i.e. right after the program got loaded into a freshly initialized emulator.
+ */
+public class InputMovie {
+
+    private static final int FILE_MAGIC = 0x43384D56; // "C8MV"
+    private static final short FILE_VERSION = 2;
+
+    // Movies of version 1 predate the other modes, so they were all recorded in CHIP-8 mode.
+    private static final short CHIP8_FILE_VERSION = 1;
+
+    private final Chip8Mode mode;
+    private final long seed;
+    private final int instructionsPerSecond;
+    private final int programChecksum;
+
+    // Events in the order they got applied: the key in the lower nibble, bit 4 set for a press
+    private int[] frames = new int[64];
+    private byte[] events = new byte[64];
+    private int eventCount;
+    private int frameCount;
+
+    public InputMovie(Chip8Mode mode, long seed, int instructionsPerSecond, byte[] program) {
+        this(mode, seed, instructionsPerSecond, checksum(program));
+    }
+
+    private InputMovie(Chip8Mode mode, long seed, int instructionsPerSecond, int programChecksum) {
+        this.mode = mode;
+        this.seed = seed;
+        this.instructionsPerSecond = instructionsPerSecond;
+        this.programChecksum = programChecksum;
+    }
+
+    /**
+     * Appends a key transition; frames must never decrease from one call to the next.
+     */
+    public synchronized void record(int frame, int key, boolean pressed) {
+        if (eventCount == frames.length) {
+            frames = Arrays.copyOf(frames, eventCount * 2);
+            events = Arrays.copyOf(events, eventCount * 2);
+        }
+        frames[eventCount] = frame;
+        events[eventCount] = (byte) (key | (pressed ? 0x10 : 0));
+        eventCount++;
+        frameCount = Math.max(frameCount, frame + 1);
+    }
+
+    /**
+     * @param frameCount the length of the movie; it never gets shorter than the last recorded event
+     */
+    public synchronized void setFrameCount(int frameCount) {
+        this.frameCount = Math.max(this.frameCount, frameCount);
+    }
+
+    public Chip8Mode getMode() {
+        return mode;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getInstructionsPerSecond() {
+        return instructionsPerSecond;
+    }
+
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    public synchronized int getEventCount() {
+        return eventCount;
+    }
+
+    public synchronized int getFrame(int event) {
+        return frames[event];
+    }
+
+    public synchronized int getKey(int event) {
+        return events[event] & 0xF;
+    }
+
+    public synchronized boolean isPressed(int event) {
+        return (events[event] & 0x10) != 0;
+    }
+
+    /**
+     * @return true if the movie was recorded with the given program
+     */
+    public boolean matches(byte[] program) {
+        return checksum(program) == programChecksum;
+    }
+
+    public synchronized void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeShort(FILE_VERSION);
+            out.writeByte(mode.ordinal());
+            out.writeLong(seed);
+            out.writeInt(instructionsPerSecond);
+            out.writeInt(programChecksum);
+            out.writeInt(frameCount);
+            out.writeInt(eventCount);
+            for (int ii = 0; ii < eventCount; ii++) {
+                out.writeInt(frames[ii]);
+                out.writeByte(events[ii]);
+            }
+        }
+    }
+
+    /**
+     * @throws IOException if the file can't be read or isn't a movie of this version
+     */
+    public static InputMovie read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int magic = in.readInt();
+            short version = in.readShort();
+            if (magic != FILE_MAGIC || (version != FILE_VERSION && version != CHIP8_FILE_VERSION)) {
+                throw new IOException(String.format("'%s' is not an input movie (magic %08x, version %d)", path, magic, version));
+            }
+
+            Chip8Mode mode = Chip8Mode.CHIP8;
+            if (version == FILE_VERSION) {
+                int ordinal = in.readUnsignedByte();
+                if (ordinal >= Chip8Mode.values().length) {
+                    throw new IOException(String.format("'%s' was recorded in an unknown mode %d", path, ordinal));
+                }
+                mode = Chip8Mode.values()[ordinal];
+            }
+            InputMovie movie = new InputMovie(mode, in.readLong(), in.readInt(), in.readInt());
+            int frameCount = in.readInt();
+            int eventCount = in.readInt();
+            for (int ii = 0; ii < eventCount; ii++) {
+                int frame = in.readInt();
+                byte event = in.readByte();
+                movie.record(frame, event & 0xF, (event & 0x10) != 0);
+            }
+            movie.setFrameCount(frameCount);
+            return movie;
+        }
+    }
+
+    private static int checksum(byte[] program) {
+        CRC32 crc = new CRC32();
+        crc.update(program);
+        return (int) crc.getValue();
+    }
+}
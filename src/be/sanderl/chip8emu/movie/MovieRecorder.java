@@ -0,0 +1,39 @@
+package be.sanderl.chip8emu.movie;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+
+/**
+ * Records the key transitions applied to an emulator into a movie, numbering frames from the moment recording
+ * started. Single-stepping in the debugger runs instructions outside of any frame and can't be recorded.
+ */
+public class MovieRecorder {
+
+    private final InputMovie movie;
+    private final Chip8Emulator emulator;
+    private final long firstFrame;
+
+    public MovieRecorder(InputMovie movie, Chip8Emulator emulator) {
+        this.movie = movie;
+        this.emulator = emulator;
+        this.firstFrame = emulator.getFrameCount();
+    }
+
+    /**
+     * Called right before the transition gets applied, at the start of the frame it belongs to.
+     */
+    public void keyChanged(int key, boolean pressed) {
+        movie.record(currentFrame(), key, pressed);
+    }
+
+    /**
+     * Marks every frame run so far as part of the movie, also when no key was touched towards the end.
+     */
+    public InputMovie finish() {
+        movie.setFrameCount(currentFrame());
+        return movie;
+    }
+
+    private int currentFrame() {
+        return (int) (emulator.getFrameCount() - firstFrame);
+    }
+}
@@ -0,0 +1,165 @@
+package be.sanderl.chip8emu.movie;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.ExecutionEngine;
+import be.sanderl.chip8emu.FrameScheduler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Plays input movies back without any window or pacing, as fast as the host allows, and hashes the display (every
+ * plane, at the current resolution) after every frame. Comparing those hashes with the ones of an earlier run tells
+ * whether anything changed the emulation.
+ */
+public class MovieReplayer {
+
+    private static final String HASHES_SUFFIX = ".hashes";
+
+    private ExecutionEngine engine = ExecutionEngine.INTERPRETER;
+
+    public MovieReplayer setEngine(ExecutionEngine engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    /**
+     * @return the hash of the display after every frame of the movie
+     * @throws IllegalArgumentException if the movie wasn't recorded with this program
+     */
+    public long[] replay(byte[] program, InputMovie movie) {
+        if (!movie.matches(program)) {
+            throw new IllegalArgumentException("The movie was recorded with a different program");
+        }
+
+        Chip8Emulator emulator = new Chip8Emulator(movie.getMode());
+        emulator.init();
+        emulator.setSeed(movie.getSeed());
+        emulator.loadProgram(program);
+        emulator.setEngine(engine);
+
+        // Running the same scheduler unpaced keeps the amount of instructions of every frame as recorded.
+        FrameScheduler scheduler = new FrameScheduler(emulator, movie.getInstructionsPerSecond());
+        scheduler.setPaced(false);
+
+        long[] hashes = new long[movie.getFrameCount()];
+        int event = 0;
+        for (int frame = 0; frame < hashes.length; frame++) {
+            while (event < movie.getEventCount() && movie.getFrame(event) == frame) {
+                emulator.setInput(movie.getKey(event), movie.isPressed(event));
+                event++;
+            }
+
+            scheduler.runFrame();
+            hashes[frame] = hash(emulator);
+        }
+        return hashes;
+    }
+
+    /**
+     * FNV-1a over the rows of every plane, followed by a final mix so that single pixel changes spread over all bits.
+     * Outside of CHIP-8 mode the resolution is hashed as well, as it changes what the rows mean.
+     */
+    static long hash(Chip8Emulator emulator) {
+        long h = 0xCBF29CE484222325L;
+        for (int plane = 0; plane < emulator.getMode().getPlaneCount(); plane++) {
+            for (long row : emulator.getPlane(plane)) {
+                h = (h ^ row) * 0x100000001B3L;
+            }
+        }
+        if (emulator.getMode() != Chip8Mode.CHIP8) {
+            h = (h ^ emulator.getDisplayWidth()) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Replays the movie and compares the result with the hashes stored next to it, or stores them if there are none
+     * yet.
+     *
+     * @return the first frame whose hash differs, or -1 if all of them match
+     */
+    public int verify(byte[] program, Path moviePath) throws IOException {
+        long[] hashes = replay(program, InputMovie.read(moviePath));
+        Path hashesPath = moviePath.resolveSibling(moviePath.getFileName() + HASHES_SUFFIX);
+
+        if (!Files.exists(hashesPath)) {
+            List<String> lines = new ArrayList<>(hashes.length);
+            for (long hash : hashes) {
+                lines.add(String.format("%016x", hash));
+            }
+            Files.write(hashesPath, lines, StandardCharsets.US_ASCII);
+            return -1;
+        }
+
+        List<String> expected = Files.readAllLines(hashesPath, StandardCharsets.US_ASCII);
+        for (int frame = 0; frame < hashes.length; frame++) {
+            if (frame >= expected.size() || Long.parseUnsignedLong(expected.get(frame), 16) != hashes[frame]) {
+                return frame;
+            }
+        }
+        return expected.size() == hashes.length ? -1 : hashes.length;
+    }
+
+    /**
+     * Usage: {@code MovieReplayer <program> <movie>... [engine]}
+     * <p>
+     * All movies are verified in parallel. The exit code is 1 if any of them no longer matches its hashes.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: MovieReplayer <program> <movie>... [engine]");
+            System.exit(1);
+        }
+
+        byte[] program = Files.readAllBytes(Paths.get(args[0]));
+        MovieReplayer replayer = new MovieReplayer();
+        List<Path> movies = new ArrayList<>();
+        for (int ii = 1; ii < args.length; ii++) {
+            if (ii == args.length - 1 && isEngine(args[ii])) {
+                replayer.setEngine(ExecutionEngine.valueOf(args[ii]));
+            } else {
+                movies.add(Paths.get(args[ii]));
+            }
+        }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        long failures = pool.submit(() -> movies.parallelStream().filter(movie -> {
+            try {
+                int frame = replayer.verify(program, movie);
+                if (frame >= 0) {
+                    System.err.println(String.format("%s: differs from frame %d on", movie, frame));
+                }
+                return frame >= 0;
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println(String.format("%s: %s", movie, e.getMessage()));
+                return true;
+            }
+        }).count()).get();
+        pool.shutdown();
+
+        System.out.println(String.format("Replayed %d movies in %d ms, %d failed", movies.size(),
+                (System.nanoTime() - start) / 1_000_000, failures));
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static boolean isEngine(String name) {
+        for (ExecutionEngine engine : ExecutionEngine.values()) {
+            if (engine.name().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,14 +1,42 @@
 package be.sanderl.chip8emu.renderer;
 
 import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.metrics.EmulatorMetrics;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Paints the display of an emulator running on another thread. That thread publishes a copy of the display at the
+ * end of every frame; painting always uses the latest complete copy and never touches the emulator itself, so frames
+ * can't tear and the emulator never waits for the event dispatch thread.
+ */
 public class AWTRenderer extends JComponent {
 
+    // Indexed by the bit of the first plane, plus twice the bit of XO-CHIP's second plane
+    private static final int[] COLORS = new int[] {0x000000, 0xFFFFFF, 0xAAAAAA, 0x555555};
+
     private final Chip8Emulator emulator;
     private final int zoomFactor;
+    private final TripleBuffer frames;
+
+    // Rows changed by frames published since the last paint started; a repaint is pending while this isn't 0.
+    private final AtomicLong pendingRows = new AtomicLong();
+
+    // The display at native resolution; only rows which changed are rewritten, scaling happens while drawing.
+    // Large enough for the highest resolution of the emulator's mode, of which the top left part is in use.
+    private final BufferedImage image;
+    private final int[] pixels;
+
+    // What the image shows right now, to find the rows which differ from the next frame
+    private final long[][] painted;
+    private int paintedWidth;
+    private int paintedHeight;
+
+    private EmulatorMetrics metrics;
 
     public AWTRenderer(Chip8Emulator emulator) {
         this(emulator, 10);
@@ -17,30 +45,107 @@ public class AWTRenderer extends JComponent {
     public AWTRenderer(Chip8Emulator emulator, int zoomFactor) {
         this.emulator = emulator;
         this.zoomFactor = zoomFactor;
+        frames = new TripleBuffer(emulator.getMode());
+        image = new BufferedImage(emulator.getMode().getMaxWidth(), emulator.getMode().getMaxHeight(), BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        painted = new long[emulator.getMode().getPlaneCount()][frames.back().planes[0].length];
         setBackground(Color.BLACK);
+        setOpaque(true);
+    }
+
+    /**
+     * @param metrics where to record how long every repaint takes, or null to not record it
+     */
+    public void setMetrics(EmulatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Publishes the emulator's display as the latest complete frame, if anything changed, and requests a repaint of
+     * the band of rows that changed. Called by the thread running the emulator, at the end of a frame. While a repaint
+     * is still pending, only rows outside of it lead to another request, so a fast emulator can't flood the event
+     * dispatch thread.
+     */
+    public void publishFrame() {
+        long rows = emulator.takeDirtyRows();
+        if (rows == 0) {
+            return;
+        }
+
+        TripleBuffer.Frame frame = frames.back();
+        frame.width = emulator.getDisplayWidth();
+        frame.height = emulator.getDisplayHeight();
+        for (int ii = 0; ii < frame.planes.length; ii++) {
+            System.arraycopy(emulator.getPlane(ii), 0, frame.planes[ii], 0, frame.planes[ii].length);
+        }
+        frames.publish();
+
+        long pending = pendingRows.getAndAccumulate(rows, (previous, added) -> previous | added);
+        if ((pending | rows) != pending) {
+            // The window keeps its size at any resolution, so a row is half as high at 128x64.
+            int rowHeight = Chip8Emulator.NATIVE_SCREEN_HEIGHT * zoomFactor / frame.height;
+            int top = Long.numberOfTrailingZeros(rows);
+            int bottom = 64 - Long.numberOfLeadingZeros(rows);
+            repaint(0, top * rowHeight, Chip8Emulator.NATIVE_SCREEN_WIDTH * zoomFactor, (bottom - top) * rowHeight);
+        }
     }
 
     @Override
     protected void paintComponent(Graphics oldGraphics) {
-        super.paintComponent(oldGraphics);
+        long start = System.nanoTime();
         Graphics2D g = (Graphics2D) oldGraphics;
 
-        if (emulator.clearScreen) {
-            g.clearRect(0, 0, emulator.NATIVE_SCREEN_WIDTH * zoomFactor, emulator.NATIVE_SCREEN_HEIGHT * zoomFactor);
-            emulator.clearScreen = false;
-            return;
+        // Frames published from here on request a repaint of their own.
+        pendingRows.set(0);
+        TripleBuffer.Frame frame = frames.latest();
+        int width = frame.width;
+        int height = frame.height;
+        int rowWords = width / 64;
+        boolean resized = width != paintedWidth || height != paintedHeight;
+        paintedWidth = width;
+        paintedHeight = height;
+
+        long[] display = frame.planes[0];
+        long[] secondPlane = frame.planes.length > 1 ? frame.planes[1] : null;
+        for (int y = 0; y < height; y++) {
+            int first = y * rowWords;
+            if (!resized && !rowChanged(frame, first, rowWords)) {
+                continue;
+            }
+            for (int ii = 0; ii < painted.length; ii++) {
+                System.arraycopy(frame.planes[ii], first, painted[ii], first, rowWords);
+            }
+
+            int offset = y * image.getWidth();
+            for (int x = 0; x < width; x++) {
+                int word = first + (x >> 6);
+                int color = (display[word] << x) < 0 ? 1 : 0;
+                if (secondPlane != null && (secondPlane[word] << x) < 0) {
+                    color |= 2;
+                }
+                pixels[offset + x] = COLORS[color];
+            }
         }
 
-        byte[] display = emulator.getDisplay();
-        for (int ii = 0; ii < display.length; ii++) {
-            int x = ii % 64;
-            int y = ii / 64;
-            g.setColor(display[ii] > 0 ? Color.WHITE : Color.BLACK);
-            g.fillRect(x*zoomFactor, y*zoomFactor, zoomFactor, zoomFactor);
+        // Only the clipped part of the image gets drawn, which is just the dirty band unless the window got exposed.
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.drawImage(image, 0, 0, Chip8Emulator.NATIVE_SCREEN_WIDTH * zoomFactor, Chip8Emulator.NATIVE_SCREEN_HEIGHT * zoomFactor,
+                0, 0, width, height, null);
+
+        if (metrics != null) {
+            metrics.recordRepaint(System.nanoTime() - start);
         }
+    }
 
-        // emulator.clearScreen = false;
-        emulator.dirtyGraphics = false;
+    private boolean rowChanged(TripleBuffer.Frame frame, int first, int rowWords) {
+        for (int ii = 0; ii < painted.length; ii++) {
+            for (int word = first; word < first + rowWords; word++) {
+                if (frame.planes[ii][word] != painted[ii][word]) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     @Override
@@ -0,0 +1,66 @@
+package be.sanderl.chip8emu.renderer;
+
+import be.sanderl.chip8emu.Chip8Mode;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands complete frames from the emulation thread to the painting thread without locks. The writer always owns a back
+ * frame to fill and the reader a front frame to paint. Publishing swaps the back frame with the middle one; taking the
+ * latest frame swaps the middle one with the front one, but only if something was published in the meantime.
+ * Neither side ever waits for the other, and neither ever sees a frame the other one is working on.
+ */
+final class TripleBuffer {
+
+    // Set in the middle index while it holds a frame the reader hasn't taken yet
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final Frame[] frames = new Frame[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    TripleBuffer(Chip8Mode mode) {
+        for (int ii = 0; ii < frames.length; ii++) {
+            frames[ii] = new Frame(mode);
+        }
+    }
+
+    /**
+     * @return the frame to fill; only to be called by the writer
+     */
+    Frame back() {
+        return frames[back];
+    }
+
+    /**
+     * Makes the back frame the latest one; only to be called by the writer.
+     */
+    void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    /**
+     * @return the most recently published frame, which stays untouched until the next call; only to be called by the
+     *         reader
+     */
+    Frame latest() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX;
+        }
+        return frames[front];
+    }
+
+    static final class Frame {
+
+        // Laid out like the emulator's planes, of which only width x height pixels are in use
+        final long[][] planes;
+        int width = Chip8Mode.CHIP8.getMaxWidth();
+        int height = Chip8Mode.CHIP8.getMaxHeight();
+
+        Frame(Chip8Mode mode) {
+            planes = new long[mode.getPlaneCount()][mode.getMaxHeight() * mode.getMaxWidth() / 64];
+        }
+    }
+}
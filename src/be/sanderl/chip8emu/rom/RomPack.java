@@ -0,0 +1,170 @@
+package be.sanderl.chip8emu.rom;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Many programs in a single memory-mapped file, found by content hash or by name. Opening a pack maps it once;
+ * loading a program afterwards is a bulk copy from the mapping into the emulator, without any file system calls.
+ * <p>
+ * Layout: a header, an index of fixed-size entries sorted by hash, the names and then the programs. Entries with
+ * identical content share their data. All reads are absolute, so a pack can be used by any number of threads.
+ *
+ * @see RomPackWriter
+ */
+public class RomPack implements Closeable {
+
+    static final int FILE_MAGIC = 0x43385250; // "C8RP"
+    static final int FILE_VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    // hash, data offset, data length, name offset, name length
+    static final int ENTRY_SIZE = 8 + 4 + 4 + 4 + 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int entryCount;
+    private final Map<String, Integer> entriesByName;
+
+    private RomPack(FileChannel channel, MappedByteBuffer buffer, int entryCount) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.entryCount = entryCount;
+
+        entriesByName = new HashMap<>(entryCount * 2);
+        for (int entry = 0; entry < entryCount; entry++) {
+            entriesByName.put(getName(entry), entry);
+        }
+    }
+
+    /**
+     * @throws IOException if the file can't be mapped or isn't a ROM pack of this version
+     */
+    public static RomPack open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != FILE_MAGIC || buffer.getInt(4) != FILE_VERSION) {
+                throw new IOException(String.format("'%s' is not a ROM pack", path));
+            }
+
+            int entryCount = buffer.getInt(8);
+            if ((long) HEADER_SIZE + (long) entryCount * ENTRY_SIZE > buffer.capacity()) {
+                throw new IOException(String.format("'%s' is truncated", path));
+            }
+            return new RomPack(channel, buffer, entryCount);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * @return an entry holding a program with the given content hash, or -1 if there is none
+     */
+    public int find(long hash) {
+        // The index is sorted by hash as unsigned numbers.
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = Long.compareUnsigned(getHash(middle), hash);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the entry with the given name, or -1 if there is none
+     */
+    public int find(String name) {
+        Integer entry = entriesByName.get(name);
+        return entry != null ? entry : -1;
+    }
+
+    public long getHash(int entry) {
+        return buffer.getLong(entryOffset(entry));
+    }
+
+    public int getLength(int entry) {
+        return buffer.getInt(entryOffset(entry) + 12);
+    }
+
+    public String getName(int entry) {
+        int offset = entryOffset(entry);
+        byte[] name = new byte[buffer.getInt(offset + 20)];
+        buffer.get(buffer.getInt(offset + 16), name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Loads the program of the given entry into the emulator, straight from the mapping.
+     */
+    public void load(int entry, Chip8Emulator emulator) {
+        int offset = entryOffset(entry);
+        emulator.loadProgram(buffer, buffer.getInt(offset + 8), buffer.getInt(offset + 12));
+    }
+
+    /**
+     * @return a copy of the program of the given entry
+     */
+    public byte[] read(int entry) {
+        int offset = entryOffset(entry);
+        byte[] program = new byte[buffer.getInt(offset + 12)];
+        buffer.get(buffer.getInt(offset + 8), program);
+        return program;
+    }
+
+    private int entryOffset(int entry) {
+        if (entry < 0 || entry >= entryCount) {
+            throw new IndexOutOfBoundsException(String.format("Entry %d of %d", entry, entryCount));
+        }
+        return HEADER_SIZE + entry * ENTRY_SIZE;
+    }
+
+    /**
+     * The content hash programs are indexed by: 64-bit FNV-1a followed by a final mix.
+     */
+    public static long hash(byte[] program) {
+        return hash(ByteBuffer.wrap(program), 0, program.length);
+    }
+
+    static long hash(ByteBuffer source, int offset, int length) {
+        long h = 0xCBF29CE484222325L;
+        for (int ii = offset; ii < offset + length; ii++) {
+            h = (h ^ (source.get(ii) & 0xFF)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * The mapping stays valid until the pack gets garbage collected; closing only releases the file.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
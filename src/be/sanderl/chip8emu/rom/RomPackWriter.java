@@ -0,0 +1,162 @@
+package be.sanderl.chip8emu.rom;
+
+import be.sanderl.chip8emu.Chip8Mode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Builds a {@link RomPack} out of programs; run it to pack files or whole directories of them.
+ */
+public class RomPackWriter {
+
+    // Programs of every mode can be packed, so the limit is the one of the mode with the most memory.
+    private static final int MAX_PROGRAM_SIZE = Chip8Mode.XO_CHIP.getMaxProgramSize();
+
+    private final List<Rom> roms = new ArrayList<>();
+
+    /**
+     * @throws IllegalArgumentException if the program doesn't fit in memory
+     */
+    public RomPackWriter add(String name, byte[] program) {
+        return add(name, program, RomPack.hash(program));
+    }
+
+    RomPackWriter add(String name, byte[] program, long hash) {
+        if (program.length > MAX_PROGRAM_SIZE) {
+            throw new IllegalArgumentException(String.format("'%s' is too large to be a program", name));
+        }
+        roms.add(new Rom(name, program, hash));
+        return this;
+    }
+
+    public void write(Path path) throws IOException {
+        roms.sort(Comparator.comparing((Rom rom) -> rom.hash, Long::compareUnsigned));
+
+        List<byte[]> names = new ArrayList<>(roms.size());
+        int namesSize = 0;
+        for (Rom rom : roms) {
+            byte[] name = rom.name.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            namesSize += name.length;
+        }
+
+        // Identical programs are stored only once. Different programs can still share a hash, so the bytes decide.
+        Map<Long, List<Rom>> stored = new HashMap<>();
+        int dataSize = 0;
+        for (Rom rom : roms) {
+            rom.original = rom;
+            List<Rom> candidates = stored.computeIfAbsent(rom.hash, hash -> new ArrayList<>(1));
+            for (Rom candidate : candidates) {
+                if (Arrays.equals(candidate.program, rom.program)) {
+                    rom.original = candidate;
+                    break;
+                }
+            }
+            if (rom.original == rom) {
+                candidates.add(rom);
+                dataSize += rom.program.length;
+            }
+        }
+
+        int namesOffset = RomPack.HEADER_SIZE + roms.size() * RomPack.ENTRY_SIZE;
+        int dataOffset = namesOffset + namesSize;
+        ByteBuffer buffer = ByteBuffer.allocate(dataOffset + dataSize);
+        buffer.putInt(RomPack.FILE_MAGIC);
+        buffer.putInt(RomPack.FILE_VERSION);
+        buffer.putInt(roms.size());
+        buffer.putInt(0);
+
+        int nameOffset = namesOffset;
+        int nextData = dataOffset;
+        for (int ii = 0; ii < roms.size(); ii++) {
+            // The first of identical programs is the one stored, so its data is in place before the others refer to it.
+            Rom rom = roms.get(ii);
+            if (rom.original == rom) {
+                rom.dataOffset = nextData;
+                buffer.put(nextData, rom.program);
+                nextData += rom.program.length;
+            }
+
+            buffer.putLong(rom.hash);
+            buffer.putInt(rom.original.dataOffset);
+            buffer.putInt(rom.program.length);
+            buffer.putInt(nameOffset);
+            buffer.putInt(names.get(ii).length);
+            buffer.put(nameOffset, names.get(ii));
+            nameOffset += names.get(ii).length;
+        }
+
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Usage: {@code RomPackWriter <pack> <program or directory>...}
+     * <p>
+     * Programs are named after their path relative to the directory they were found in.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: RomPackWriter <pack> <program or directory>...");
+            System.exit(1);
+        }
+
+        RomPackWriter writer = new RomPackWriter();
+        for (int ii = 1; ii < args.length; ii++) {
+            Path root = Paths.get(args[ii]);
+            if (!Files.isDirectory(root)) {
+                writer.add(root.getFileName().toString(), Files.readAllBytes(root));
+                continue;
+            }
+
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+                    if (Files.size(file) <= MAX_PROGRAM_SIZE) {
+                        writer.add(root.relativize(file).toString(), Files.readAllBytes(file));
+                    } else {
+                        System.err.println(String.format("Skipping '%s', it is too large to be a program.", file));
+                    }
+                }
+            }
+        }
+
+        writer.write(Paths.get(args[0]));
+        System.out.println(String.format("Packed %d programs into %s", writer.roms.size(), args[0]));
+    }
+
+    private static final class Rom {
+
+        final String name;
+        final byte[] program;
+        final long hash;
+
+        // The rom whose data this one shares, or itself, and where that data ends up in the pack
+        Rom original = this;
+        int dataOffset;
+
+        Rom(String name, byte[] program, long hash) {
+            this.name = name;
+            this.program = program;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package be.sanderl.chip8emu.server;
+
+import be.sanderl.chip8emu.Chip8Mode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A client connection with fixed-size buffers, so memory per connection stays bounded no matter how slow the client
+ * reads. Frames are never queued: while the client can't keep up, the rows changing in the meantime are merely
+ * remembered and sent as a single frame once the client catches up.
+ */
+final class Connection {
+
+    // Room for replies which aren't frames; a client that doesn't even leave this much room gets disconnected.
+    private static final int REPLY_RESERVE = 64;
+    // Masked by the height of the display when encoding
+    private static final long ALL_ROWS = -1L;
+
+    final SocketChannel channel;
+    final SelectionKey key;
+    final ByteBuffer readBuffer;
+    private final ByteBuffer writeBuffer;
+    private final int maxFrameSize;
+
+    private ServerSession session;
+    private long pendingRows;
+
+    Connection(SocketChannel channel, SelectionKey key, Chip8Mode mode) {
+        this.channel = channel;
+        this.key = key;
+        maxFrameSize = Protocol.maxFrameSize(mode);
+        readBuffer = ByteBuffer.allocateDirect(Protocol.HEADER_SIZE + mode.getMaxProgramSize());
+        writeBuffer = ByteBuffer.allocateDirect(maxFrameSize + REPLY_RESERVE);
+    }
+
+    ServerSession getSession() {
+        return session;
+    }
+
+    void attach(ServerSession session) {
+        detach();
+        this.session = session;
+        session.viewers.add(this);
+        pendingRows = ALL_ROWS;
+    }
+
+    void detach() {
+        if (session != null) {
+            session.viewers.remove(this);
+            session = null;
+            pendingRows = 0;
+        }
+    }
+
+    void addDirtyRows(long rows) {
+        pendingRows |= rows;
+    }
+
+    boolean hasPendingRows() {
+        return pendingRows != 0;
+    }
+
+    /**
+     * Queues a message other than a frame.
+     *
+     * @throws IOException if the client hasn't read enough to make room for it
+     */
+    void reply(byte type, int value, int valueSize) throws IOException {
+        if (writeBuffer.remaining() < Protocol.HEADER_SIZE + valueSize) {
+            throw new IOException("Client doesn't read its replies");
+        }
+        writeBuffer.put(type);
+        writeBuffer.putShort((short) valueSize);
+        if (valueSize == 4) {
+            writeBuffer.putInt(value);
+        } else {
+            writeBuffer.put((byte) value);
+        }
+    }
+
+    /**
+     * Writes as much as the socket takes without blocking, first encoding the pending rows if there is room for them.
+     */
+    void flush() throws IOException {
+        write();
+        if (pendingRows != 0 && session != null && writeBuffer.remaining() >= maxFrameSize) {
+            encodeFrame();
+            write();
+        }
+
+        // Only wait for the socket to become writable while there actually is something left to write.
+        int interest = writeBuffer.position() > 0 || pendingRows != 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (key.interestOps() != interest) {
+            key.interestOps(interest);
+        }
+    }
+
+    private void encodeFrame() {
+        Protocol.encodeFrame(session.id, session.emulator, pendingRows, writeBuffer);
+        pendingRows = 0;
+    }
+
+    private void write() throws IOException {
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+        writeBuffer.flip();
+        channel.write(writeBuffer);
+        writeBuffer.compact();
+    }
+}
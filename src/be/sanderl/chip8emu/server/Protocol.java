@@ -0,0 +1,137 @@
+package be.sanderl.chip8emu.server;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format between {@link SessionServer} and its clients. Every message in either direction is a type byte,
+ * followed by a 16-bit payload length and the payload itself; all numbers are big-endian.
+ * <p>
+ * Rows of the display are sent in words of 64 pixels, each run-length encoded: a byte with the amount of runs, followed
+ * by the length of every run. Runs alternate between unlit and lit pixels, starting with unlit, so the first run may
+ * be empty.
+ */
+public final class Protocol {
+
+    // Client to server
+    /** Payload: the program; answered with {@link #CREATED} */
+    public static final byte CREATE = 1;
+    /** Payload: int session id; the full display is sent right away, changes follow after every frame */
+    public static final byte ATTACH = 2;
+    /** Payload: none */
+    public static final byte DETACH = 3;
+    /** Payload: int session id */
+    public static final byte DESTROY = 4;
+    /** Payload: key byte, 1 for pressed or 0 for released; goes to the attached session */
+    public static final byte KEY = 5;
+
+    // Server to client
+    /** Payload: int session id */
+    public static final byte CREATED = (byte) 0x81;
+    /**
+     * Payload: int session id, short width, short height, byte plane count and long mask of the rows which follow.
+     * Then for every row in the mask from top to bottom, for every plane, the row's words from left to right.
+     */
+    public static final byte FRAME = (byte) 0x82;
+    /** Payload: int session id; the attached session got destroyed, by a client or because its program crashed */
+    public static final byte DESTROYED = (byte) 0x83;
+    /** Payload: error code byte */
+    public static final byte ERROR = (byte) 0x8F;
+
+    public static final byte ERROR_UNKNOWN_SESSION = 1;
+    public static final byte ERROR_TOO_MANY_SESSIONS = 2;
+    public static final byte ERROR_NOT_ATTACHED = 3;
+
+    public static final int HEADER_SIZE = 3;
+
+    // A word of alternating pixels starting with a lit one is the worst case: the count, an empty unlit run and 64 runs
+    // of a single pixel.
+    private static final int MAX_WORD_SIZE = 2 + 64;
+    private static final int FRAME_HEADER_SIZE = 4 + 2 + 2 + 1 + 8;
+
+    private Protocol() {
+    }
+
+    /**
+     * @return the size of the largest message, header included, a server running in the mode sends
+     */
+    public static int maxFrameSize(Chip8Mode mode) {
+        int words = mode.getPlaneCount() * mode.getMaxHeight() * mode.getMaxWidth() / 64;
+        return HEADER_SIZE + FRAME_HEADER_SIZE + words * MAX_WORD_SIZE;
+    }
+
+    /**
+     * Writes a {@link #FRAME} message with the given rows of the emulator's display at the buffer's position, which
+     * must have at least {@link #maxFrameSize(Chip8Mode)} bytes left. Rows below the current height are left out.
+     */
+    public static void encodeFrame(int sessionId, Chip8Emulator emulator, long rows, ByteBuffer buffer) {
+        int width = emulator.getDisplayWidth();
+        int height = emulator.getDisplayHeight();
+        int planeCount = emulator.getMode().getPlaneCount();
+        int rowWords = width / 64;
+        if (height < 64) {
+            rows &= (1L << height) - 1;
+        }
+
+        int start = buffer.position();
+        buffer.put(FRAME);
+        buffer.putShort((short) 0);
+        buffer.putInt(sessionId);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        buffer.put((byte) planeCount);
+        buffer.putLong(rows);
+
+        while (rows != 0) {
+            int y = Long.numberOfTrailingZeros(rows);
+            rows &= rows - 1;
+            for (int plane = 0; plane < planeCount; plane++) {
+                long[] display = emulator.getPlane(plane);
+                for (int word = y * rowWords; word < (y + 1) * rowWords; word++) {
+                    encodeRow(display[word], buffer);
+                }
+            }
+        }
+        buffer.putShort(start + 1, (short) (buffer.position() - start - HEADER_SIZE));
+    }
+
+    /**
+     * Writes a word of a row at the buffer's position, which must have at least 66 bytes left.
+     */
+    public static void encodeRow(long row, ByteBuffer buffer) {
+        int countPosition = buffer.position();
+        buffer.put((byte) 0);
+
+        int runs = 0;
+        int x = 0;
+        boolean lit = false;
+        while (x < 64) {
+            long remaining = row << x;
+            int length = Math.min(Long.numberOfLeadingZeros(lit ? ~remaining : remaining), 64 - x);
+            buffer.put((byte) length);
+            runs++;
+            x += length;
+            lit = !lit;
+        }
+        buffer.put(countPosition, (byte) runs);
+    }
+
+    /**
+     * Reads a word written by {@link #encodeRow(long, ByteBuffer)} from the buffer's position.
+     */
+    public static long decodeRow(ByteBuffer buffer) {
+        int runs = buffer.get() & 0xFF;
+        long row = 0;
+        int x = 0;
+        for (int ii = 0; ii < runs; ii++) {
+            int length = buffer.get() & 0xFF;
+            if ((ii & 1) == 1 && length > 0) {
+                row |= (-1L >>> (64 - length)) << (64 - x - length);
+            }
+            x += length;
+        }
+        return row;
+    }
+}
@@ -0,0 +1,47 @@
+package be.sanderl.chip8emu.server;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.FrameScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An emulator hosted by the server, together with the connections watching it. Only the server thread touches it.
+ */
+final class ServerSession {
+
+    final int id;
+    final Chip8Emulator emulator;
+    final List<Connection> viewers = new ArrayList<>(1);
+
+    private final FrameScheduler scheduler;
+
+    ServerSession(int id, Chip8Mode mode, byte[] program, int instructionsPerSecond) {
+        this.id = id;
+        this.emulator = new Chip8Emulator(mode);
+        emulator.init();
+        emulator.loadProgram(program);
+
+        // The server paces all sessions at once, each of them only needs the right amount of instructions per frame.
+        scheduler = new FrameScheduler(emulator, instructionsPerSecond);
+        scheduler.setPaced(false);
+    }
+
+    /**
+     * Runs a frame and hands the rows that changed to every viewer.
+     */
+    void runFrame() {
+        scheduler.runFrame();
+
+        if (emulator.dirtyGraphics || emulator.clearScreen) {
+            emulator.dirtyGraphics = false;
+            emulator.clearScreen = false;
+            long dirtyRows = emulator.takeDirtyRows();
+            for (int ii = 0; ii < viewers.size(); ii++) {
+                viewers.get(ii).addDirtyRows(dirtyRows);
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package be.sanderl.chip8emu.server;
+
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.FrameScheduler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hosts many emulator sessions in a single thread and streams their displays to clients, over either a loopback TCP
+ * port or a Unix domain socket. See {@link Protocol} for the messages.
+ * <p>
+ * Between handling client messages, every session is run for a frame 60 times per second. Key events therefore
+ * always arrive at a frame boundary, and a slow client never holds up emulation: it simply receives fewer frames,
+ * each covering all rows which changed since the previous one.
+ * <p>
+ * All sessions of a server run in the same mode, which sizes the buffers of every connection.
+ */
+public class SessionServer implements Closeable {
+
+    public static final int DEFAULT_INSTRUCTIONS_PER_SECOND = 600;
+
+    private static final long FRAME_PERIOD_NANOS = 1_000_000_000L / FrameScheduler.TIMER_FREQUENCY;
+    private static final long MAX_LAG_NANOS = 5 * FRAME_PERIOD_NANOS;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final SocketAddress address;
+    private final int maxSessions;
+    private final Chip8Mode mode;
+    private int instructionsPerSecond = DEFAULT_INSTRUCTIONS_PER_SECOND;
+
+    private final Map<Integer, ServerSession> sessionsById = new HashMap<>();
+    private final List<ServerSession> sessions = new ArrayList<>();
+    private final List<Connection> broken = new ArrayList<>();
+    private final List<ServerSession> crashed = new ArrayList<>();
+    private int nextSessionId = 1;
+
+    private volatile boolean running = true;
+
+    private SessionServer(Selector selector, ServerSocketChannel serverChannel, SocketAddress address, int maxSessions,
+                          Chip8Mode mode) {
+        this.selector = selector;
+        this.serverChannel = serverChannel;
+        this.address = address;
+        this.maxSessions = maxSessions;
+        this.mode = mode;
+    }
+
+    public static SessionServer open(SocketAddress address, int maxSessions) throws IOException {
+        return open(address, maxSessions, Chip8Mode.CHIP8);
+    }
+
+    /**
+     * @param address an {@link InetSocketAddress} or a {@link UnixDomainSocketAddress} to listen on
+     * @param mode    the mode every session runs in
+     */
+    public static SessionServer open(SocketAddress address, int maxSessions, Chip8Mode mode) throws IOException {
+        ServerSocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+        Selector selector = Selector.open();
+        try {
+            channel.bind(address);
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_ACCEPT);
+            return new SessionServer(selector, channel, channel.getLocalAddress(), maxSessions, mode);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            selector.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param instructionsPerSecond the CPU speed of sessions created from now on
+     */
+    public void setInstructionsPerSecond(int instructionsPerSecond) {
+        this.instructionsPerSecond = instructionsPerSecond;
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Only meant for monitoring; the amount may be stale when called from another thread.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Serves clients and runs sessions on the calling thread until {@link #close()} is called.
+     */
+    public void run() throws IOException {
+        long nextFrameDeadline = System.nanoTime();
+        try {
+            while (running) {
+                long remaining = nextFrameDeadline - System.nanoTime();
+                if (remaining > 0) {
+                    // select(0) would wait forever, so always wait at least a millisecond.
+                    selector.select(Math.max(1, remaining / 1_000_000));
+                } else {
+                    selector.selectNow();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+
+                long now = System.nanoTime();
+                if (now - nextFrameDeadline >= 0) {
+                    runFrame();
+                    nextFrameDeadline += FRAME_PERIOD_NANOS;
+                    if (now - nextFrameDeadline > MAX_LAG_NANOS) {
+                        nextFrameDeadline = now;
+                    }
+                }
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Makes {@link #run()} return; safe to call from any thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void runFrame() {
+        for (int ii = 0; ii < sessions.size(); ii++) {
+            ServerSession session = sessions.get(ii);
+            try {
+                session.runFrame();
+            } catch (RuntimeException re) {
+                // Programs come from clients, and e.g. overflowing the stack only takes down their own session.
+                System.err.println(String.format("Session %d crashed: %s", session.id, re));
+                crashed.add(session);
+            }
+        }
+        for (int ii = 0; ii < crashed.size(); ii++) {
+            destroy(crashed.get(ii), null);
+        }
+        crashed.clear();
+
+        for (int ii = 0; ii < sessions.size(); ii++) {
+            List<Connection> viewers = sessions.get(ii).viewers;
+            for (int jj = 0; jj < viewers.size(); jj++) {
+                Connection connection = viewers.get(jj);
+                if (connection.hasPendingRows()) {
+                    try {
+                        connection.flush();
+                    } catch (IOException ioe) {
+                        broken.add(connection);
+                    }
+                }
+            }
+        }
+
+        // Closing detaches, which can't happen while iterating over the viewers.
+        for (int ii = 0; ii < broken.size(); ii++) {
+            disconnect(broken.get(ii));
+        }
+        broken.clear();
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                if (connection.channel.read(connection.readBuffer) < 0) {
+                    disconnect(connection);
+                    return;
+                }
+                processMessages(connection);
+            }
+            connection.flush();
+        } catch (IOException ioe) {
+            disconnect(connection);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            if (!(address instanceof UnixDomainSocketAddress)) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key, mode));
+        } catch (IOException ioe) {
+            System.err.println(String.format("Could not accept a client: %s", ioe.getMessage()));
+        }
+    }
+
+    private void processMessages(Connection connection) throws IOException {
+        ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+        try {
+            while (buffer.remaining() >= Protocol.HEADER_SIZE) {
+                int start = buffer.position();
+                byte type = buffer.get(start);
+                int length = buffer.getShort(start + 1) & 0xFFFF;
+                if (length > buffer.capacity() - Protocol.HEADER_SIZE) {
+                    throw new IOException(String.format("Message of %d bytes is too long", length));
+                }
+                if (buffer.remaining() < Protocol.HEADER_SIZE + length) {
+                    break;
+                }
+
+                buffer.position(start + Protocol.HEADER_SIZE);
+                process(connection, type, buffer, length);
+                buffer.position(start + Protocol.HEADER_SIZE + length);
+            }
+        } finally {
+            buffer.compact();
+        }
+    }
+
+    private void process(Connection connection, byte type, ByteBuffer payload, int length) throws IOException {
+        if (length < payloadSize(type)) {
+            throw new IOException(String.format("Message of type %d is too short", type));
+        }
+
+        switch (type) {
+            case Protocol.CREATE: {
+                if (sessions.size() >= maxSessions) {
+                    connection.reply(Protocol.ERROR, Protocol.ERROR_TOO_MANY_SESSIONS, 1);
+                    return;
+                }
+                byte[] program = new byte[length];
+                payload.get(program);
+                ServerSession session = new ServerSession(nextSessionId++, mode, program, instructionsPerSecond);
+                sessions.add(session);
+                sessionsById.put(session.id, session);
+                connection.reply(Protocol.CREATED, session.id, 4);
+                return;
+            }
+            case Protocol.ATTACH: {
+                ServerSession session = sessionsById.get(payload.getInt());
+                if (session == null) {
+                    connection.reply(Protocol.ERROR, Protocol.ERROR_UNKNOWN_SESSION, 1);
+                } else {
+                    connection.attach(session);
+                }
+                return;
+            }
+            case Protocol.DETACH:
+                connection.detach();
+                return;
+            case Protocol.DESTROY: {
+                ServerSession session = sessionsById.get(payload.getInt());
+                if (session == null) {
+                    connection.reply(Protocol.ERROR, Protocol.ERROR_UNKNOWN_SESSION, 1);
+                    return;
+                }
+                IOException failure = destroy(session, connection);
+                if (failure != null) {
+                    throw failure;
+                }
+                return;
+            }
+            case Protocol.KEY: {
+                ServerSession session = connection.getSession();
+                if (session == null) {
+                    connection.reply(Protocol.ERROR, Protocol.ERROR_NOT_ATTACHED, 1);
+                    return;
+                }
+                int key = payload.get() & 0xF;
+                session.emulator.setInput(key, payload.get() != 0);
+                return;
+            }
+            default:
+                throw new IOException(String.format("Unknown message type %d", type));
+        }
+    }
+
+    /**
+     * Removes the session and tells its viewers. Viewers which can't take the message get disconnected, except for the
+     * requester, if any: its failure is returned instead, so that it can be handled like any other failed request.
+     */
+    private IOException destroy(ServerSession session, Connection requester) {
+        sessionsById.remove(session.id);
+        sessions.remove(session);
+        IOException failure = null;
+        while (!session.viewers.isEmpty()) {
+            Connection viewer = session.viewers.get(session.viewers.size() - 1);
+            viewer.detach();
+            try {
+                viewer.reply(Protocol.DESTROYED, session.id, 4);
+                viewer.flush();
+            } catch (IOException ioe) {
+                if (viewer != requester) {
+                    disconnect(viewer);
+                } else {
+                    failure = ioe;
+                }
+            }
+        }
+        return failure;
+    }
+
+    private static int payloadSize(byte type) {
+        switch (type) {
+            case Protocol.ATTACH:
+            case Protocol.DESTROY:
+                return 4;
+            case Protocol.KEY:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    private void disconnect(Connection connection) {
+        connection.detach();
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ioe) {
+            // Nothing left to clean up.
+        }
+    }
+
+    private void shutdown() throws IOException {
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        }
+    }
+
+    /**
+     * Usage: {@code SessionServer <port | socket path> [max sessions]}
+     * <p>
+     * Sessions run in CHIP-8 mode, unless started with e.g. {@code -Dchip8.mode=XO_CHIP}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SessionServer <port | socket path> [max sessions]");
+            System.exit(1);
+        }
+
+        SocketAddress address;
+        if (args[0].matches("\\d+")) {
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+        } else {
+            Path path = Paths.get(args[0]);
+            Files.deleteIfExists(path);
+            address = UnixDomainSocketAddress.of(path);
+        }
+        int maxSessions = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        Chip8Mode mode = Chip8Mode.valueOf(System.getProperty("chip8.mode", Chip8Mode.CHIP8.name()));
+
+        SessionServer server = SessionServer.open(address, maxSessions, mode);
+        System.out.println(String.format("Serving up to %d sessions on %s", maxSessions, server.getAddress()));
+        server.run();
+    }
+}
@@ -0,0 +1,35 @@
+package be.sanderl.chip8emu.sound;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the generated audio: signed 8-bit mono samples at {@link #SAMPLE_RATE} hertz.
+ */
+public interface AudioSink extends Closeable {
+
+    int SAMPLE_RATE = 44100;
+
+    /**
+     * Discards all audio. Sound doesn't even generate samples for this sink.
+     */
+    AudioSink NULL = new AudioSink() {
+        @Override
+        public void write(byte[] samples, int length) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    void write(byte[] samples, int length) throws IOException;
+
+    /**
+     * @return true if {@link #write(byte[], int)} blocks until the device is ready for more samples, which makes
+     * the sink suitable to be fed by a thread of its own
+     */
+    default boolean isRealTime() {
+        return false;
+    }
+}
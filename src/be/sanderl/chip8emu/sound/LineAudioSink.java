@@ -0,0 +1,40 @@
+package be.sanderl.chip8emu.sound;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays audio through the default output device.
+ */
+public class LineAudioSink implements AudioSink {
+
+    private final SourceDataLine line;
+
+    /**
+     * @param bufferSize the size of the line's buffer in samples; the smaller, the lower the latency
+     */
+    public LineAudioSink(int bufferSize) throws LineUnavailableException {
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 8, 1, true, false);
+        line = AudioSystem.getSourceDataLine(format);
+        line.open(format, bufferSize);
+        line.start();
+    }
+
+    @Override
+    public void write(byte[] samples, int length) {
+        line.write(samples, 0, length);
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        line.stop();
+        line.close();
+    }
+}
@@ -0,0 +1,59 @@
+package be.sanderl.chip8emu.sound;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+/**
+ * Writes audio to a WAV file, e.g. to check the sound of a headless run afterwards.
+ */
+public class WavFileAudioSink implements AudioSink {
+
+    private static final int HEADER_SIZE = 44;
+
+    private final RandomAccessFile file;
+    private int dataSize;
+
+    public WavFileAudioSink(Path path) throws IOException {
+        file = new RandomAccessFile(path.toFile(), "rw");
+        file.setLength(0);
+        writeHeader();
+    }
+
+    @Override
+    public void write(byte[] samples, int length) throws IOException {
+        // WAV files store 8-bit samples unsigned, so shift them up by half the range.
+        for (int ii = 0; ii < length; ii++) {
+            samples[ii] ^= 0x80;
+        }
+        file.write(samples, 0, length);
+        for (int ii = 0; ii < length; ii++) {
+            samples[ii] ^= 0x80;
+        }
+        dataSize += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The sizes in the header are only known now.
+        file.seek(0);
+        writeHeader();
+        file.close();
+    }
+
+    private void writeHeader() throws IOException {
+        file.writeBytes("RIFF");
+        file.writeInt(Integer.reverseBytes(HEADER_SIZE - 8 + dataSize));
+        file.writeBytes("WAVE");
+        file.writeBytes("fmt ");
+        file.writeInt(Integer.reverseBytes(16));
+        file.writeShort(Short.reverseBytes((short) 1)); // PCM
+        file.writeShort(Short.reverseBytes((short) 1)); // mono
+        file.writeInt(Integer.reverseBytes(SAMPLE_RATE));
+        file.writeInt(Integer.reverseBytes(SAMPLE_RATE)); // bytes per second
+        file.writeShort(Short.reverseBytes((short) 1)); // bytes per sample
+        file.writeShort(Short.reverseBytes((short) 8)); // bits per sample
+        file.writeBytes("data");
+        file.writeInt(Integer.reverseBytes(dataSize));
+    }
+}
@@ -0,0 +1,270 @@
+package be.sanderl.chip8emu.state;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.FrameScheduler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Records the emulator state once per frame so it can be stepped back in time later on.
+ * <p>
+ * Every recorded frame is the XOR of its save state with the one of the previous frame, run-length encoded; since
+ * only a handful of bytes change per frame, the XOR consists almost entirely of zeros. Every so many frames a keyframe
+ * is stored instead (the state XOR'ed with zeros, which compresses well too because most of memory is empty), so
+ * restoring a frame never takes more than a keyframe interval worth of deltas.
+ * <p>
+ * All entries share one byte array of a fixed size. When it is full, the oldest keyframe is evicted together with
+ * the deltas depending on it. Recording doesn't allocate anything.
+ * <p>
+ * The buffers are sized for the states of a single mode, so only emulators in that mode can be recorded.
+ */
+public class RewindBuffer {
+
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+
+    private final Chip8Mode mode;
+    private final int keyframeInterval;
+
+    private final byte[] ring;
+    private int ringStart;
+    private int ringUsed;
+
+    private final int[] entryOffsets;
+    private final int[] entryLengths;
+    private final boolean[] entryKeyframes;
+    private int firstEntry;
+    private int entryCount;
+    private int framesSinceKeyframe;
+
+    private final ByteBuffer current;
+    private final byte[] previous;
+    private final byte[] zeros;
+    private final byte[] encoded;
+
+    public RewindBuffer(int memoryBudget) {
+        this(Chip8Mode.CHIP8, memoryBudget);
+    }
+
+    public RewindBuffer(int memoryBudget, int keyframeInterval) {
+        this(Chip8Mode.CHIP8, memoryBudget, keyframeInterval);
+    }
+
+    public RewindBuffer(Chip8Mode mode, int memoryBudget) {
+        this(mode, memoryBudget, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * @param mode             the mode of the emulators which will be recorded
+     * @param memoryBudget     the amount of bytes all recorded frames may take up together
+     * @param keyframeInterval the maximum amount of deltas between two keyframes
+     */
+    public RewindBuffer(Chip8Mode mode, int memoryBudget, int keyframeInterval) {
+        int stateSize = Chip8Emulator.stateSize(mode);
+        // Worst case encoding: every other byte differs, which costs two one-byte varints and a literal per two bytes.
+        int maxEncodedSize = stateSize * 2;
+        if (memoryBudget < maxEncodedSize) {
+            throw new IllegalArgumentException(String.format("A budget of %d bytes can't even hold a single frame", memoryBudget));
+        }
+
+        this.mode = mode;
+        this.keyframeInterval = keyframeInterval;
+        current = ByteBuffer.allocate(stateSize);
+        previous = new byte[stateSize];
+        zeros = new byte[stateSize];
+        encoded = new byte[maxEncodedSize];
+        ring = new byte[memoryBudget];
+
+        // Even an unchanged frame takes up two bytes, which puts an upper limit on the amount of entries.
+        int maxEntries = memoryBudget / 2;
+        entryOffsets = new int[maxEntries];
+        entryLengths = new int[maxEntries];
+        entryKeyframes = new boolean[maxEntries];
+    }
+
+    /**
+     * Records the current state of the emulator as the newest frame.
+     */
+    public void record(Chip8Emulator emulator) {
+        checkMode(emulator);
+        current.clear();
+        emulator.saveState(current);
+        byte[] state = current.array();
+
+        boolean keyframe = entryCount == 0 || framesSinceKeyframe >= keyframeInterval;
+        int length = encode(state, keyframe ? zeros : previous);
+
+        while (entryCount > 0 && (ring.length - ringUsed < length || entryCount == entryOffsets.length)) {
+            evictOldestKeyframe();
+        }
+        if (entryCount == 0) {
+            // Everything got evicted, so this frame can't depend on any other one.
+            keyframe = true;
+            length = encode(state, zeros);
+        }
+
+        int offset = (ringStart + ringUsed) % ring.length;
+        int tail = Math.min(length, ring.length - offset);
+        System.arraycopy(encoded, 0, ring, offset, tail);
+        System.arraycopy(encoded, tail, ring, 0, length - tail);
+        ringUsed += length;
+
+        int entry = (firstEntry + entryCount) % entryOffsets.length;
+        entryOffsets[entry] = offset;
+        entryLengths[entry] = length;
+        entryKeyframes[entry] = keyframe;
+        entryCount++;
+
+        framesSinceKeyframe = keyframe ? 0 : framesSinceKeyframe + 1;
+        System.arraycopy(state, 0, previous, 0, state.length);
+    }
+
+    /**
+     * @return the amount of recorded frames the emulator can currently be rewound by
+     */
+    public int getAvailableFrames() {
+        return Math.max(0, entryCount - 1);
+    }
+
+    public int getMemoryUsed() {
+        return ringUsed;
+    }
+
+    /**
+     * Puts the emulator back into the state it had the given amount of frames before the newest recorded frame.
+     * Every frame recorded after that point is discarded, so recording simply continues from there.
+     *
+     * @return the amount of frames actually rewound, which is less than requested if not enough frames were recorded
+     */
+    public int rewind(int frames, Chip8Emulator emulator) {
+        checkMode(emulator);
+        if (entryCount == 0) {
+            return 0;
+        }
+
+        int rewound = Math.min(frames, entryCount - 1);
+        int target = entryCount - 1 - rewound;
+
+        int keyframe = target;
+        while (!entryKeyframes[entryIndex(keyframe)]) {
+            keyframe--;
+        }
+
+        System.arraycopy(zeros, 0, previous, 0, previous.length);
+        for (int ii = keyframe; ii <= target; ii++) {
+            decode(entryIndex(ii), previous);
+        }
+        emulator.loadState(ByteBuffer.wrap(previous));
+
+        for (int ii = entryCount - 1; ii > target; ii--) {
+            ringUsed -= entryLengths[entryIndex(ii)];
+        }
+        entryCount = target + 1;
+        framesSinceKeyframe = target - keyframe;
+
+        return rewound;
+    }
+
+    public int rewindSeconds(double seconds, Chip8Emulator emulator) {
+        return rewind((int) Math.round(seconds * FrameScheduler.TIMER_FREQUENCY), emulator);
+    }
+
+    public void clear() {
+        ringStart = 0;
+        ringUsed = 0;
+        firstEntry = 0;
+        entryCount = 0;
+        framesSinceKeyframe = 0;
+    }
+
+    private void checkMode(Chip8Emulator emulator) {
+        if (emulator.getMode() != mode) {
+            throw new IllegalArgumentException(
+                    String.format("Buffer records %s states, not %s", mode, emulator.getMode()));
+        }
+    }
+
+    private int entryIndex(int entry) {
+        return (firstEntry + entry) % entryOffsets.length;
+    }
+
+    private void evictOldestKeyframe() {
+        do {
+            ringStart = (ringStart + entryLengths[firstEntry]) % ring.length;
+            ringUsed -= entryLengths[firstEntry];
+            firstEntry = (firstEntry + 1) % entryOffsets.length;
+            entryCount--;
+        } while (entryCount > 0 && !entryKeyframes[firstEntry]);
+    }
+
+    /**
+     * Encodes {@code state ^ base} as a sequence of (zero run length, literal length, literal bytes) into
+     * {@link #encoded}; both lengths are stored as varints.
+     *
+     * @return the amount of encoded bytes
+     */
+    private int encode(byte[] state, byte[] base) {
+        int length = 0;
+        int ii = 0;
+        while (ii < state.length) {
+            int zeroStart = ii;
+            while (ii < state.length && state[ii] == base[ii]) {
+                ii++;
+            }
+            int literalStart = ii;
+            while (ii < state.length && state[ii] != base[ii]) {
+                ii++;
+            }
+
+            length = writeVarInt(literalStart - zeroStart, length);
+            length = writeVarInt(ii - literalStart, length);
+            for (int jj = literalStart; jj < ii; jj++) {
+                encoded[length++] = (byte) (state[jj] ^ base[jj]);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * XORs the given entry onto the state.
+     */
+    private void decode(int entry, byte[] state) {
+        int position = entryOffsets[entry];
+        int ii = 0;
+        while (ii < state.length) {
+            int zeroRun = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = ring[position];
+                position = (position + 1) % ring.length;
+                zeroRun |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            int literals = 0;
+            shift = 0;
+            do {
+                b = ring[position];
+                position = (position + 1) % ring.length;
+                literals |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            ii += zeroRun;
+            for (int jj = 0; jj < literals; jj++) {
+                state[ii++] ^= ring[position];
+                position = (position + 1) % ring.length;
+            }
+        }
+    }
+
+    private int writeVarInt(int value, int position) {
+        while (value >= 0x80) {
+            encoded[position++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        encoded[position++] = (byte) value;
+        return position;
+    }
+}
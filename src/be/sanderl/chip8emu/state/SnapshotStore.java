@@ -0,0 +1,149 @@
+package be.sanderl.chip8emu.state;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A fixed number of save state slots in a single memory-mapped file. Saving and loading copy straight between the
+ * emulator and the mapping, so checkpoints never pass through intermediate buffers or stream I/O.
+ * Different slots may be used from different threads at the same time. Slots are sized for the states of a single
+ * mode, given when opening the store.
+ */
+public class SnapshotStore implements Closeable {
+
+    private static final int FILE_MAGIC = 0x43385353; // "C8SS"
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    // Every slot starts with a marker telling whether it holds a state, padded to keep the states 8-byte aligned.
+    private static final int SLOT_USED = 1;
+    private static final int SLOT_HEADER_SIZE = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Chip8Mode mode;
+    private final int slotCount;
+    private final int slotSize;
+
+    private SnapshotStore(FileChannel channel, MappedByteBuffer buffer, Chip8Mode mode, int slotCount, int slotSize) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.mode = mode;
+        this.slotCount = slotCount;
+        this.slotSize = slotSize;
+    }
+
+    public static SnapshotStore open(Path path, int slotCount) throws IOException {
+        return open(path, Chip8Mode.CHIP8, slotCount);
+    }
+
+    /**
+     * Opens the store at the given path, creating it with the given amount of slots if it doesn't exist yet.
+     *
+     * @param mode the mode of the emulators which will be saved
+     * @throws IOException if the file can't be mapped or isn't a store with the same slot layout
+     */
+    public static SnapshotStore open(Path path, Chip8Mode mode, int slotCount) throws IOException {
+        int slotSize = SLOT_HEADER_SIZE + ((Chip8Emulator.stateSize(mode) + 7) & ~7);
+        long size = HEADER_SIZE + (long) slotCount * slotSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("%d slots do not fit in a single mapping", slotCount));
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean created = channel.size() == 0;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            if (created) {
+                buffer.putInt(0, FILE_MAGIC);
+                buffer.putInt(4, FILE_VERSION);
+                buffer.putInt(8, slotCount);
+                buffer.putInt(12, slotSize);
+            } else if (buffer.getInt(0) != FILE_MAGIC || buffer.getInt(4) != FILE_VERSION
+                    || buffer.getInt(8) != slotCount || buffer.getInt(12) != slotSize) {
+                throw new IOException(String.format("'%s' is not a snapshot store with %d slots", path, slotCount));
+            }
+
+            return new SnapshotStore(channel, buffer, mode, slotCount, slotSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public void save(int slot, Chip8Emulator emulator) {
+        if (emulator.getMode() != mode) {
+            throw new IllegalArgumentException(
+                    String.format("Store holds %s states, not %s", mode, emulator.getMode()));
+        }
+        // The slot only counts as used again once the whole state is in place, so an interrupted save leaves it empty
+        // rather than holding half of the new state on top of the old one.
+        clear(slot);
+        ByteBuffer view = slotView(slot);
+        view.position(view.position() + SLOT_HEADER_SIZE);
+        emulator.saveState(view);
+        buffer.putInt(slotOffset(slot), SLOT_USED);
+    }
+
+    /**
+     * @return false if nothing has been saved in the slot, in which case the emulator is left untouched
+     */
+    public boolean load(int slot, Chip8Emulator emulator) {
+        if (!isUsed(slot)) {
+            return false;
+        }
+
+        ByteBuffer view = slotView(slot);
+        view.position(view.position() + SLOT_HEADER_SIZE);
+        emulator.loadState(view);
+        return true;
+    }
+
+    public boolean isUsed(int slot) {
+        return buffer.getInt(slotOffset(slot)) == SLOT_USED;
+    }
+
+    public void clear(int slot) {
+        buffer.putInt(slotOffset(slot), 0);
+    }
+
+    /**
+     * Forces every saved slot to be written to the storage device.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private ByteBuffer slotView(int slot) {
+        // Every caller gets its own position, so slots can be used concurrently.
+        ByteBuffer view = buffer.duplicate();
+        view.position(slotOffset(slot));
+        return view;
+    }
+
+    private int slotOffset(int slot) {
+        if (slot < 0 || slot >= slotCount) {
+            throw new IndexOutOfBoundsException(String.format("Slot %d does not exist, there are %d slots", slot, slotCount));
+        }
+        return HEADER_SIZE + slot * slotSize;
+    }
+}
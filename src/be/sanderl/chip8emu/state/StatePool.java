@@ -0,0 +1,174 @@
+package be.sanderl.chip8emu.state;
+
+import be.sanderl.chip8emu.Chip8Emulator;
+import be.sanderl.chip8emu.Chip8Mode;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Machine states of a large amount of emulator instances, packed into fixed-size slots of a single off-heap buffer.
+ * An idle instance costs just its slot: no emulator object, arrays or decode cache on the heap, and nothing for the
+ * garbage collector to trace. Instances run on a handful of worker emulators instead, one per thread, which load a slot,
+ * execute it and write it back; see {@link #run(int, Chip8Emulator, int, int)}.
+ * <p>
+ * Slots are taken from and returned to a free list. Different slots may be loaded, saved and run from different threads
+ * at the same time.
+ */
+public class StatePool {
+
+    private final Chip8Mode mode;
+    private final int stateSize;
+    private final int slotSize;
+    private final ByteBuffer buffer;
+
+    // Every thread gets a view of its own, since loading and saving move the view's position.
+    private final ThreadLocal<ByteBuffer> views;
+
+    private final int[] freeSlots;
+    private int freeCount;
+    private final boolean[] used;
+
+    public StatePool(int capacity) {
+        this(Chip8Mode.CHIP8, capacity);
+    }
+
+    /**
+     * @throws IllegalArgumentException if that many slots don't fit in a single buffer
+     */
+    public StatePool(Chip8Mode mode, int capacity) {
+        this.mode = mode;
+        stateSize = Chip8Emulator.stateSize(mode);
+        // Keep every slot 8-byte aligned, like the snapshot store does.
+        slotSize = (stateSize + 7) & ~7;
+        if ((long) capacity * slotSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("%d slots do not fit in a single buffer", capacity));
+        }
+
+        buffer = ByteBuffer.allocateDirect(capacity * slotSize);
+        views = ThreadLocal.withInitial(buffer::duplicate);
+        freeSlots = new int[capacity];
+        used = new boolean[capacity];
+        freeAll();
+    }
+
+    /**
+     * Takes a slot from the free list and stores the emulator's current state in it.
+     *
+     * @return the slot, or -1 if the pool is full
+     */
+    public int allocate(Chip8Emulator initial) {
+        int slot = take();
+        if (slot >= 0) {
+            save(slot, initial);
+        }
+        return slot;
+    }
+
+    /**
+     * Takes as many slots as fit in the array and fills all of them with the emulator's current state, which is
+     * serialized only once and then copied slot by slot.
+     *
+     * @return the amount of slots taken, less than requested if the pool ran full
+     */
+    public int allocate(Chip8Emulator initial, int[] slots) {
+        int count = 0;
+        while (count < slots.length) {
+            int slot = take();
+            if (slot < 0) {
+                break;
+            }
+            slots[count++] = slot;
+        }
+
+        if (count > 0) {
+            save(slots[0], initial);
+            for (int ii = 1; ii < count; ii++) {
+                buffer.put(slots[ii] * slotSize, buffer, slots[0] * slotSize, stateSize);
+            }
+        }
+        return count;
+    }
+
+    private synchronized int take() {
+        if (freeCount == 0) {
+            return -1;
+        }
+        int slot = freeSlots[--freeCount];
+        used[slot] = true;
+        return slot;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the slot isn't in use
+     */
+    public synchronized void free(int slot) {
+        if (!used[slot]) {
+            throw new IllegalArgumentException(String.format("Slot %d is not in use", slot));
+        }
+        used[slot] = false;
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Returns every slot to the free list at once; the states they hold are simply forgotten.
+     */
+    public synchronized void freeAll() {
+        freeCount = freeSlots.length;
+        for (int ii = 0; ii < freeCount; ii++) {
+            // Lowest slots first, so a partly used pool only touches the start of the buffer.
+            freeSlots[ii] = freeCount - 1 - ii;
+            used[ii] = false;
+        }
+    }
+
+    public void save(int slot, Chip8Emulator emulator) {
+        ByteBuffer view = views.get();
+        position(view, slot);
+        emulator.saveState(view);
+    }
+
+    public void load(int slot, Chip8Emulator emulator) {
+        ByteBuffer view = views.get();
+        position(view, slot);
+        emulator.loadState(view);
+    }
+
+    /**
+     * Runs a slot for a number of frames on the given worker, which has to be of the pool's mode. Only the machine
+     * state is kept per slot; the worker's statistics add up over all slots it ran. Loading a slot drops all decoded
+     * and recompiled code, so workers are best left on the interpreter.
+     */
+    public void run(int slot, Chip8Emulator worker, int frames, int instructionsPerFrame) {
+        load(slot, worker);
+        for (int ii = 0; ii < frames; ii++) {
+            worker.runFrame(instructionsPerFrame);
+        }
+        save(slot, worker);
+    }
+
+    private void position(ByteBuffer view, int slot) {
+        int offset = slot * slotSize;
+        view.clear();
+        view.position(offset);
+        view.limit(offset + stateSize);
+    }
+
+    public Chip8Mode getMode() {
+        return mode;
+    }
+
+    public int getCapacity() {
+        return freeSlots.length;
+    }
+
+    public synchronized int getUsedSlots() {
+        return freeSlots.length - freeCount;
+    }
+
+    /**
+     * @return the amount of bytes every instance takes up, including the padding between slots
+     */
+    public int getSlotSize() {
+        return slotSize;
+    }
+}
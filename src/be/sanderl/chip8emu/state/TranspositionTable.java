@@ -0,0 +1,112 @@
+package be.sanderl.chip8emu.state;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The set of state hashes (see {@link be.sanderl.chip8emu.Chip8Emulator#getStateHash()}) seen so far, shared by any
+ * amount of threads exploring a program, e.g. to prune every path that reaches a state another path already reached.
+ * <p>
+ * The table never grows and never waits: hashes are claimed with a compare-and-set in a fixed array. A hash which finds
+ * no free entry close to its own is reported as new without being stored, so a full table only costs duplicate work,
+ * never a missed state. Two different states with the same 64-bit hash are taken for the same one, though.
+ */
+public class TranspositionTable {
+
+    // How many entries a hash may be stored away from its own before it counts as not fitting
+    private static final int MAX_PROBES = 16;
+
+    // Marks free entries, so the hash that happens to be 0 is stored as another, just as unlikely one instead.
+    private static final long EMPTY = 0;
+    private static final long ZERO_HASH = 0xD6E8FEB86659FD93L;
+
+    private final AtomicLongArray hashes;
+    private final int mask;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger overflows = new AtomicInteger();
+
+    /**
+     * @param capacity the amount of hashes to make room for, rounded up to a power of two
+     * @throws IllegalArgumentException if the capacity isn't positive or more than 2^30
+     */
+    public TranspositionTable(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException(String.format("Unsupported capacity %d", capacity));
+        }
+        int entries = Integer.highestOneBit(capacity);
+        if (entries < capacity) {
+            entries <<= 1;
+        }
+        hashes = new AtomicLongArray(entries);
+        mask = entries - 1;
+    }
+
+    /**
+     * @return true if the hash wasn't in the table yet, i.e. the state it belongs to is reached for the first time
+     */
+    public boolean add(long hash) {
+        long key = hash != EMPTY ? hash : ZERO_HASH;
+        // State hashes are well mixed already, so their lowest bits make a fine index.
+        int index = (int) key & mask;
+        for (int ii = 0; ii < MAX_PROBES; ii++) {
+            long stored = hashes.get(index);
+            if (stored == EMPTY) {
+                if (hashes.compareAndSet(index, EMPTY, key)) {
+                    size.incrementAndGet();
+                    return true;
+                }
+                // Another thread claimed this entry in the meantime, possibly for the very same hash.
+                stored = hashes.get(index);
+            }
+            if (stored == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+
+        overflows.incrementAndGet();
+        return true;
+    }
+
+    public boolean contains(long hash) {
+        long key = hash != EMPTY ? hash : ZERO_HASH;
+        int index = (int) key & mask;
+        for (int ii = 0; ii < MAX_PROBES; ii++) {
+            long stored = hashes.get(index);
+            if (stored == key) {
+                return true;
+            }
+            if (stored == EMPTY) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Forgets every hash; not to be called while other threads are adding any.
+     */
+    public void clear() {
+        for (int ii = 0; ii < hashes.length(); ii++) {
+            hashes.set(ii, EMPTY);
+        }
+        size.set(0);
+        overflows.set(0);
+    }
+
+    public int getCapacity() {
+        return hashes.length();
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return how many hashes didn't fit and were reported as new without being stored
+     */
+    public int getOverflows() {
+        return overflows.get();
+    }
+}
@@ -0,0 +1,98 @@
+package be.sanderl.chip8emu.trace;
+
+import be.sanderl.chip8emu.Chip8Mode;
+import be.sanderl.chip8emu.Disassembler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Turns a trace file written by {@link TraceRecorder} into a readable listing, one executed instruction per line.
+ */
+public class TraceDecoder {
+
+    private final ByteBuffer trace;
+    private final Chip8Mode mode;
+
+    /**
+     * @throws IllegalArgumentException if the file isn't a trace of this version, in a known mode
+     */
+    public TraceDecoder(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            trace = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        int magic = trace.remaining() >= TraceRecorder.HEADER_SIZE ? trace.getInt() : 0;
+        short version = magic != 0 ? trace.getShort() : 0;
+        if (magic != TraceRecorder.FILE_MAGIC || version != TraceRecorder.FILE_VERSION) {
+            throw new IllegalArgumentException(String.format("Unsupported trace (magic %08x, version %d)", magic, version));
+        }
+        int ordinal = trace.get() & 0xFF;
+        int recordSize = trace.get() & 0xFF;
+        if (ordinal >= Chip8Mode.values().length || recordSize != TraceRecorder.RECORD_SIZE) {
+            throw new IllegalArgumentException(String.format("Unsupported trace (mode %d, records of %d bytes)",
+                    ordinal, recordSize));
+        }
+        mode = Chip8Mode.values()[ordinal];
+    }
+
+    public Chip8Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the amount of complete records in the file
+     */
+    public int getRecordCount() {
+        return (trace.limit() - TraceRecorder.HEADER_SIZE) / TraceRecorder.RECORD_SIZE;
+    }
+
+    public void decode(PrintWriter out) {
+        for (int ii = 0; ii < getRecordCount(); ii++) {
+            int offset = TraceRecorder.HEADER_SIZE + ii * TraceRecorder.RECORD_SIZE;
+            long first = trace.getLong(offset);
+            long second = trace.getLong(offset + 8);
+
+            int frame = (int) (first >>> 32);
+            int pc = (int) (first >>> 16) & 0xFFFF;
+            int instruction = (int) first & 0xFFFF;
+            int I = (int) (second >>> 48) & 0xFFFF;
+            int register = (int) (second >>> 40) & 0xFF;
+            int vx = (int) (second >>> 32) & 0xFF;
+            int vf = (int) (second >>> 24) & 0xFF;
+            int delayTimer = (int) (second >>> 16) & 0xFF;
+            int soundTimer = (int) (second >>> 8) & 0xFF;
+            int sp = (int) second & 0xFF;
+
+            if ((register & TraceRecorder.FLAG_DROPPED) != 0) {
+                out.println("... records dropped ...");
+            }
+            out.println(String.format("%8d  %04X  %04X  %-16s I=%04X V%X=%02X VF=%02X DT=%02X ST=%02X SP=%X",
+                    frame, pc, instruction, Disassembler.disassemble(instruction, mode), I, register >> 4, vx, vf,
+                    delayTimer, soundTimer, sp));
+        }
+        out.flush();
+    }
+
+    /**
+     * Usage: {@code TraceDecoder <trace>}, which prints the listing to standard output.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: TraceDecoder <trace>");
+            System.exit(1);
+        }
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        new TraceDecoder(Paths.get(args[0])).decode(out);
+    }
+}
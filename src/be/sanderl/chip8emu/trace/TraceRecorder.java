@@ -0,0 +1,184 @@
+package be.sanderl.chip8emu.trace;
+
+import be.sanderl.chip8emu.Chip8Mode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records every executed instruction into a trace file, see {@link TraceDecoder} to read one. The emulation thread
+ * writes fixed-size records into an off-heap ring buffer, which a background thread drains into the file, so recording
+ * costs just two stores per instruction. Once the ring is full because the disk can't keep up, records are dropped
+ * rather than slowing down emulation; the first record after a gap says so.
+ * <p>
+ * A record is made up of the frame, pc, instruction and I, then Vx of the instruction, VF, both timers and the stack
+ * pointer. Vx is the register most instructions change, which together with VF and I shows the effect of nearly all of
+ * them. The whole file is little-endian, the native order of nearly every machine, so records are stored as they are.
+ */
+public class TraceRecorder implements Closeable {
+
+    static final int FILE_MAGIC = 0x43385452; // "C8TR"
+    static final short FILE_VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 16;
+
+    // Set in the low nibble of the register byte of the first record after records were dropped
+    static final int FLAG_DROPPED = 1;
+
+    // The writer gets to see new records at least this often, besides at the end of every frame.
+    private static final int PUBLISH_INTERVAL = 256 * RECORD_SIZE;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final FileChannel channel;
+    private final ByteBuffer ring;
+    private final ByteBuffer drainView;
+    private final int mask;
+    private final Thread writer;
+
+    // Bytes recorded so far, and up to where the ring was known to be free; only touched by the emulation thread
+    private long head;
+    private long limit;
+    private int pendingFlags;
+    private volatile long droppedRecords;
+
+    // Bytes handed to the writer, and bytes the writer wrote to the file
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+
+    private volatile boolean closing;
+    private volatile IOException failure;
+
+    public TraceRecorder(Path path, Chip8Mode mode) throws IOException {
+        this(path, mode, 1 << 16);
+    }
+
+    /**
+     * @param capacity the amount of records the ring buffer holds, rounded up to a power of two
+     */
+    public TraceRecorder(Path path, Chip8Mode mode, int capacity) throws IOException {
+        int records = Integer.highestOneBit(Math.max(capacity, 2));
+        if (records < capacity) {
+            records <<= 1;
+        }
+        ring = ByteBuffer.allocateDirect(records * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        drainView = ring.duplicate();
+        mask = ring.capacity() - 1;
+        limit = ring.capacity();
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(FILE_MAGIC);
+        header.putShort(FILE_VERSION);
+        header.put((byte) mode.ordinal());
+        header.put((byte) RECORD_SIZE);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+
+        writer = new Thread(this::drain, "chip8-trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records an instruction right after it executed; only to be called by the thread running the emulator.
+     *
+     * @param pc the address the instruction was fetched from
+     */
+    public void record(long frame, int pc, int instruction, int I, int x, byte vx, byte vf, byte delayTimer,
+                       byte soundTimer, byte sp) {
+        if (head == limit) {
+            limit = consumed.get() + ring.capacity();
+            if (head == limit) {
+                droppedRecords++;
+                pendingFlags = FLAG_DROPPED;
+                return;
+            }
+        }
+
+        int offset = (int) head & mask;
+        ring.putLong(offset, frame << 32 | (long) (pc & 0xFFFF) << 16 | (instruction & 0xFFFF));
+        ring.putLong(offset + 8, (long) (I & 0xFFFF) << 48 | (long) (x << 4 | pendingFlags) << 40
+                | (long) (vx & 0xFF) << 32 | (long) (vf & 0xFF) << 24 | (delayTimer & 0xFF) << 16
+                | (soundTimer & 0xFF) << 8 | (sp & 0xFF));
+        pendingFlags = 0;
+        head += RECORD_SIZE;
+        if ((head & (PUBLISH_INTERVAL - 1)) == 0) {
+            published.lazySet(head);
+        }
+    }
+
+    /**
+     * Hands every record so far to the writer; called by the emulator at the end of every frame.
+     */
+    public void flush() {
+        published.lazySet(head);
+    }
+
+    private void drain() {
+        long written = 0;
+        try {
+            while (true) {
+                boolean finished = closing;
+                long available = published.get();
+                if (available == written) {
+                    if (finished) {
+                        return;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+
+                // The records may wrap around the end of the ring, in which case they take two writes.
+                while (written < available) {
+                    int offset = (int) written & mask;
+                    int length = (int) Math.min(available - written, mask + 1 - offset);
+                    drainView.limit(offset + length).position(offset);
+                    while (drainView.hasRemaining()) {
+                        channel.write(drainView);
+                    }
+                    written += length;
+                }
+                consumed.lazySet(written);
+            }
+        } catch (IOException ioe) {
+            failure = ioe;
+        }
+    }
+
+    /**
+     * @return how many records didn't fit in the ring buffer and are missing from the trace
+     */
+    public long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    /**
+     * Writes out the remaining records and closes the file; to be called once the emulator stopped recording.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}